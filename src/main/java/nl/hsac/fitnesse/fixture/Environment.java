@@ -8,6 +8,7 @@ import freemarker.template.Template;
 import nl.hsac.fitnesse.fixture.util.*;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang3.StringEscapeUtils;
+import org.apache.http.entity.ContentType;
 
 import java.io.File;
 import java.util.Map;
@@ -22,7 +23,8 @@ public class Environment {
     private String fitNesseRoot = ContextConfigurator.DEFAULT_ROOT;
     private Configuration freemarkerConfig;
     private FreeMarkerHelper fmHelper;
-    private ConcurrentHashMap<String, Template> templateCache;
+    private TemplateCache templateCache;
+    private int requestPreviewLength = 64 * 1024;
     private ConcurrentHashMap<String, String> symbols;
     private HttpClient httpClient;
     private long nextSequenceNr = System.currentTimeMillis();
@@ -34,6 +36,8 @@ public class Environment {
     private ProgramHelper programHelper;
     private DatesHelper datesHelper = new DatesHelper();
     private SeleniumHelper seleniumHelper;
+    private WebDriverPool webDriverPool = new WebDriverPool();
+    private BackgroundFileWriter backgroundFileWriter = new BackgroundFileWriter();
     private MapHelper mapHelper = new MapHelper();
     private ReflectionHelper reflectionHelper = new ReflectionHelper();
 
@@ -47,7 +51,7 @@ public class Environment {
         freemarkerConfig = cfg;
         
         fmHelper = new FreeMarkerHelper();
-        templateCache = new ConcurrentHashMap<String, Template>();
+        templateCache = new TemplateCache(cfg, fmHelper);
 
         symbols = new ConcurrentHashMap<String, String>();
 
@@ -66,6 +70,8 @@ public class Environment {
         configDatesHelper();
 
         seleniumHelper = new SeleniumHelper();
+        seleniumHelper.setDriverPool(webDriverPool);
+        seleniumHelper.setFileWriter(backgroundFileWriter);
     }
 
     /**
@@ -161,17 +167,22 @@ public class Environment {
      * @return template by that name
      */
     public Template getTemplate(String name) {
-        Template result;
-        if (!templateCache.containsKey(name)) {
-            Template t = fmHelper.getTemplate(getConfiguration(), name);
-            result = templateCache.putIfAbsent(name, t);
-            if (result == null) {
-                result = t;
-            }
-        } else {
-            result = templateCache.get(name);
-        }
-        return result;
+        return templateCache.getTemplate(name);
+    }
+
+    /**
+     * @return cache of compiled templates.
+     */
+    public TemplateCache getTemplateCache() {
+        return templateCache;
+    }
+
+    /**
+     * Compiles all templates (below /templates/ on class path), so tests do not have to wait for that.
+     * @return number of templates compiled.
+     */
+    public int precompileTemplates() {
+        return templateCache.precompileTemplates(getClass().getClassLoader(), "templates");
     }
 
     /**
@@ -236,6 +247,46 @@ public class Environment {
         doHttpPost(url, result, headers, contentType);
     }
 
+    /**
+     * Performs POST to supplied url of result of applying template with model, without creating the complete
+     * request in memory. Only the start of the request (see getRequestPreviewLength()) is stored in result,
+     * if the request was longer result's isRequestTruncated() will be true.
+     * @param url url to post to.
+     * @param templateName name of template to use.
+     * @param model model for template.
+     * @param result result to populate with response.
+     * @param headers headers to add.
+     * @param contentType contentType for request.
+     * @param chunked true to send request using chunked transfer encoding, false to send Content-Length
+     *                (which requires the template to be applied twice).
+     */
+    public void doHttpPostStreaming(String url, String templateName, Object model, HttpResponse result,
+                                    Map<String, Object> headers, String contentType, boolean chunked) {
+        Template t = getTemplate(templateName);
+        TemplateEntity entity = new TemplateEntity(t, model, ContentType.parse(contentType), getRequestPreviewLength());
+        entity.setChunked(chunked);
+        try {
+            httpClient.post(url, result, headers, entity);
+        } finally {
+            result.setRequest(entity.getPreview());
+            result.setRequestTruncated(entity.isPreviewTruncated());
+        }
+    }
+
+    /**
+     * @return maximum number of characters of a streamed request that are stored.
+     */
+    public int getRequestPreviewLength() {
+        return requestPreviewLength;
+    }
+
+    /**
+     * @param length maximum number of characters of a streamed request to store.
+     */
+    public void setRequestPreviewLength(int length) {
+        requestPreviewLength = length;
+    }
+
     /**
      * Performs POST to supplied url of result's request.
      * @param url url to post to.
@@ -302,6 +353,21 @@ public class Environment {
         httpClient.delete(url, response, headers);
     }
 
+    /**
+     * @return client used to make HTTP requests (allowing its connection pool to be configured).
+     */
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Sets the HttpClient used to make HTTP requests.
+     * @param aHttpClient client to use.
+     */
+    public void setHttpClient(HttpClient aHttpClient) {
+        httpClient = aHttpClient;
+    }
+
     private void setNamespaceContext(XmlHttpResponse response) {
         response.setNamespaceContext(getNamespaceContext());
     }
@@ -433,6 +499,20 @@ public class Environment {
         return seleniumHelper;
     }
 
+    /**
+     * @return pool of web drivers to reuse.
+     */
+    public WebDriverPool getWebDriverPool() {
+        return webDriverPool;
+    }
+
+    /**
+     * @return writer to save files (e.g. screenshots) in the background with.
+     */
+    public BackgroundFileWriter getBackgroundFileWriter() {
+        return backgroundFileWriter;
+    }
+
     /**
      * @return directory containing FitNesse's root.
      */
@@ -1,5 +1,10 @@
 package nl.hsac.fitnesse.fixture.slim;
 
+import nl.hsac.fitnesse.fixture.util.TemplateCache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Fixture to generate strings using Freemarker templates. These strings can be stored in variables so the can
  * be passed as arguments to methods of other fixtures.
@@ -43,6 +48,37 @@ public class FreemarkerFixture extends SlimFixtureWithMap {
         return result;
     }
 
+    /**
+     * Compiles all templates, so that tests using them later do not have to wait for that.
+     * @return number of templates compiled.
+     */
+    public int precompileTemplates() {
+        return getEnvironment().precompileTemplates();
+    }
+
+    /**
+     * @param interval minimum time (in milliseconds) between checks whether a template was modified
+     *                 (and must be reloaded), negative to never reload.
+     */
+    public void setTemplateReloadCheckIntervalMilliseconds(long interval) {
+        getEnvironment().getTemplateCache().setReloadCheckIntervalMillis(interval);
+    }
+
+    /**
+     * @return statistics of template cache.
+     */
+    public Map<String, Long> templateCacheStatistics() {
+        TemplateCache cache = getEnvironment().getTemplateCache();
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        result.put("size", (long) cache.getSize());
+        result.put("hits", cache.getHits());
+        result.put("misses", cache.getMisses());
+        result.put("reloads", cache.getReloads());
+        result.put("evictions", cache.getEvictions());
+        result.put("loadTimeMs", cache.getTotalLoadTimeMillis());
+        return result;
+    }
+
     //// methods to support usage in dynamic decision tables
 
     public String get(String requestedValue) {
@@ -1,13 +1,19 @@
 package nl.hsac.fitnesse.fixture.slim;
 
 import freemarker.template.Template;
+import nl.hsac.fitnesse.fixture.util.HttpClient;
 import nl.hsac.fitnesse.fixture.util.HttpResponse;
+import org.apache.http.pool.PoolStats;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -22,6 +28,11 @@ public class HttpTest extends SlimFixtureWithMap {
     private HttpResponse response = createResponse();
     private String template;
     private String contentType = DEFAULT_POST_CONTENT_TYPE;
+    private final List<QueuedRequest> queuedRequests = new ArrayList<QueuedRequest>();
+    private final List<QueuedRequest> sentRequests = new ArrayList<QueuedRequest>();
+    private int batchConcurrency = 5;
+    private boolean streamTemplateRequests = false;
+    private boolean streamChunked = true;
 
     /**
      * Sets template to use.
@@ -108,7 +119,12 @@ public class HttpTest extends SlimFixtureWithMap {
         } else {
             String url = getUrl(serviceUrl);
             try {
-                getEnvironment().doHttpPost(url, template, getCurrentValues(), response, headerValues, getContentType());
+                if (streamTemplateRequests) {
+                    getEnvironment().doHttpPostStreaming(url, template, getCurrentValues(), response, headerValues,
+                                                            getContentType(), streamChunked);
+                } else {
+                    getEnvironment().doHttpPost(url, template, getCurrentValues(), response, headerValues, getContentType());
+                }
             } catch (Throwable t) {
                 throw new StopTestException("Unable to get response from POST to: " + url, t);
             }
@@ -117,6 +133,22 @@ public class HttpTest extends SlimFixtureWithMap {
         return result;
     }
 
+    /**
+     * @param stream true if template's result should be sent while it is generated, instead of generating the
+     *               complete request first. Only the start of the request will be available afterwards.
+     */
+    public void setStreamTemplateRequests(boolean stream) {
+        streamTemplateRequests = stream;
+    }
+
+    /**
+     * @param chunked true if streamed requests should use chunked transfer encoding (default), false to
+     *                send a Content-Length header (requires the template to be applied twice).
+     */
+    public void setStreamTemplateRequestsChunked(boolean chunked) {
+        streamChunked = chunked;
+    }
+
     /**
      * Sends HTTP POST body to service endpoint.
      * @param body content to post
@@ -192,10 +224,221 @@ public class HttpTest extends SlimFixtureWithMap {
         return result;
     }
 
+    //// methods to send requests concurrently in a batch
+
+    /**
+     * Queues HTTP POST of template with current values to service endpoint, it will be sent by #sendBatch().
+     * @param serviceUrl service endpoint to send request to.
+     * @return number of request in batch (to be passed to #useResponseOfBatchRequest()).
+     */
+    public int queuePostTemplateTo(String serviceUrl) {
+        if (template == null) {
+            throw new StopTestException("No template available to use in post");
+        }
+        String body = getEnvironment().processTemplate(template, getCurrentValues());
+        return queuePost(body, serviceUrl);
+    }
+
+    /**
+     * Queues HTTP POST of body to service endpoint, it will be sent by #sendBatch().
+     * @param body content to post
+     * @param serviceUrl service endpoint to send body to.
+     * @return number of request in batch (to be passed to #useResponseOfBatchRequest()).
+     */
+    public int queuePostTo(String body, String serviceUrl) {
+        return queuePost(cleanupBody(body), serviceUrl);
+    }
+
+    /**
+     * Queues HTTP POST of all values (url encoded) to service endpoint, it will be sent by #sendBatch().
+     * @param serviceUrl service endpoint to send values to.
+     * @return number of request in batch (to be passed to #useResponseOfBatchRequest()).
+     */
+    public int queuePostValuesTo(String serviceUrl) {
+        return queuePost(urlEncodeCurrentValues(), serviceUrl);
+    }
+
+    protected int queuePost(String body, String serviceUrl) {
+        final String url = getUrl(serviceUrl);
+        return queueRequest(new QueuedRequest("POST to: " + url) {
+            @Override
+            protected void send() {
+                getEnvironment().doHttpPost(url, batchResponse, headers, postContentType);
+            }
+        }, body);
+    }
+
+    /**
+     * Queues HTTP GET to service endpoint, it will be sent by #sendBatch().
+     * @param serviceUrl service endpoint to get content from.
+     * @return number of request in batch (to be passed to #useResponseOfBatchRequest()).
+     */
+    public int queueGetFrom(String serviceUrl) {
+        final String url = createUrlWithParams(serviceUrl);
+        return queueRequest(new QueuedRequest("GET from: " + url) {
+            @Override
+            protected void send() {
+                getEnvironment().doGet(url, batchResponse, headers);
+            }
+        }, url);
+    }
+
+    /**
+     * Queues HTTP DELETE to service endpoint, it will be sent by #sendBatch().
+     * @param serviceUrl service endpoint to delete.
+     * @return number of request in batch (to be passed to #useResponseOfBatchRequest()).
+     */
+    public int queueDelete(String serviceUrl) {
+        final String url = createUrlWithParams(serviceUrl);
+        return queueRequest(new QueuedRequest("DELETE: " + url) {
+            @Override
+            protected void send() {
+                getEnvironment().doDelete(url, batchResponse, headers);
+            }
+        }, url);
+    }
+
+    protected int queueRequest(QueuedRequest request, String requestContent) {
+        request.batchResponse.setRequest(requestContent);
+        queuedRequests.add(request);
+        return queuedRequests.size();
+    }
+
+    /**
+     * Sends all queued requests, using at most #getBatchConcurrency() simultaneous requests, and waits for
+     * all of them to complete. Afterwards the responses can be checked (in the order the requests were queued)
+     * by calling #useResponseOfBatchRequest() for each.
+     * Please note: the connection pool's max connections per host should be at least the batch's concurrency
+     * for all requests to actually be sent simultaneously.
+     * @return true if all requests could be made and no response indicated an error.
+     */
+    public boolean sendBatch() {
+        for (QueuedRequest request : sentRequests) {
+            if (request.batchResponse != response) {
+                request.batchResponse.release();
+            }
+        }
+        sentRequests.clear();
+        sentRequests.addAll(queuedRequests);
+        queuedRequests.clear();
+        if (!sentRequests.isEmpty()) {
+            int threads = Math.max(1, Math.min(batchConcurrency, sentRequests.size()));
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                executor.invokeAll(sentRequests);
+            } catch (InterruptedException e) {
+                throw new StopTestException("Interrupted while sending batch", e);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        boolean result = true;
+        for (QueuedRequest request : sentRequests) {
+            if (request.error != null) {
+                result = false;
+            } else {
+                try {
+                    request.batchResponse.validResponse();
+                } catch (RuntimeException e) {
+                    result = false;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Makes the response to a request sent in the last batch the 'current' response, so all
+     * methods checking the response (e.g. #responseStatus()) apply to it.
+     * @param requestNumber number returned when request was queued.
+     * @return true if response did not indicate error.
+     */
+    public boolean useResponseOfBatchRequest(int requestNumber) {
+        if (requestNumber < 1 || requestNumber > sentRequests.size()) {
+            throw new SlimFixtureException(false, "No request: " + requestNumber + " in last batch (batch contained: "
+                                                + sentRequests.size() + " requests)");
+        }
+        QueuedRequest request = sentRequests.get(requestNumber - 1);
+        response = request.batchResponse;
+        if (request.error != null) {
+            throw new StopTestException("Unable to get response from " + request.description, request.error);
+        }
+        return postProcessResponse();
+    }
+
+    /**
+     * @return number of requests queued, but not yet sent.
+     */
+    public int queuedRequestCount() {
+        return queuedRequests.size();
+    }
+
+    /**
+     * Removes all queued requests (without sending them).
+     */
+    public void clearBatch() {
+        queuedRequests.clear();
+    }
+
+    /**
+     * @return maximum number of requests from a batch that will be sent simultaneously.
+     */
+    public int getBatchConcurrency() {
+        return batchConcurrency;
+    }
+
+    /**
+     * @param concurrency maximum number of requests from a batch that will be sent simultaneously.
+     */
+    public void setBatchConcurrency(int concurrency) {
+        batchConcurrency = concurrency;
+    }
+
+    /**
+     * Request to be sent as part of a batch. Captures headers and content type at the moment it was queued.
+     */
+    protected abstract class QueuedRequest implements Callable<Void> {
+        protected final String description;
+        protected final HttpResponse batchResponse = createResponse();
+        protected final Map<String, Object> headers = new LinkedHashMap<String, Object>(headerValues);
+        protected final String postContentType = getContentType();
+        private Throwable error;
+
+        protected QueuedRequest(String aDescription) {
+            description = aDescription;
+        }
+
+        @Override
+        public Void call() {
+            try {
+                send();
+            } catch (Throwable t) {
+                error = t;
+            }
+            return null;
+        }
+
+        protected abstract void send();
+    }
+
+    //// end: methods to send requests concurrently in a batch
+
     protected void resetResponse() {
+        if (!isBatchResponse(response)) {
+            response.release();
+        }
         response = createResponse();
     }
 
+    private boolean isBatchResponse(HttpResponse aResponse) {
+        for (QueuedRequest request : sentRequests) {
+            if (request.batchResponse == aResponse) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     String createUrlWithParams(String serviceUrl) {
         String baseUrl = getUrl(serviceUrl);
         if (!getCurrentValues().isEmpty()) {
@@ -273,10 +516,12 @@ public class HttpTest extends SlimFixtureWithMap {
     }
 
     /**
-     * @return request sent last time.
+     * @return request sent last time (only its start, unformatted, if it was streamed and too long to keep).
      */
     public String request() {
-        return safeFormatValue(response.getRequest());
+        String request = response.getRequest();
+        // the start of a request can not be formatted as it is not valid XML/JSON
+        return response.isRequestTruncated() ? request : safeFormatValue(request);
     }
 
     /**
@@ -342,6 +587,93 @@ public class HttpTest extends SlimFixtureWithMap {
         return new HttpResponse();
     }
 
+    //// methods to configure and inspect the (shared) connection pool
+
+    /**
+     * @param max maximum number of simultaneous connections (to all hosts combined).
+     */
+    public void setMaxConnections(int max) {
+        getHttpClient().setMaxTotalConnections(max);
+    }
+
+    /**
+     * @param max maximum number of simultaneous connections to a single host.
+     */
+    public void setMaxConnectionsPerHost(int max) {
+        getHttpClient().setMaxConnectionsPerRoute(max);
+    }
+
+    /**
+     * @param max maximum number of simultaneous connections to serviceUrl's host.
+     * @param serviceUrl url to host to configure limit for.
+     */
+    public void setMaxConnectionsFor(int max, String serviceUrl) {
+        getHttpClient().setMaxConnectionsFor(getUrl(serviceUrl), max);
+    }
+
+    /**
+     * @param millis maximum time to keep idle connections alive, -1 to let server decide.
+     */
+    public void setKeepAliveMilliseconds(long millis) {
+        getHttpClient().setKeepAliveMillis(millis);
+    }
+
+    /**
+     * @param millis time after which idle connections are closed, -1 to keep them open.
+     */
+    public void setIdleConnectionTimeoutMilliseconds(long millis) {
+        getHttpClient().setIdleConnectionTimeoutMillis(millis);
+    }
+
+    /**
+     * @param millis time of inactivity after which a connection is checked before it is reused.
+     */
+    public void setValidateConnectionAfterInactivityMilliseconds(int millis) {
+        getHttpClient().setValidateAfterInactivityMillis(millis);
+    }
+
+    /**
+     * @return connection pool statistics: overall (key 'total') and per host.
+     */
+    public Map<String, String> connectionPoolStatistics() {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, PoolStats> entry : getHttpClient().getConnectionPoolStatistics().entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toString());
+        }
+        return result;
+    }
+
+    /**
+     * @return number of connections currently in use.
+     */
+    public int leasedConnections() {
+        return getTotalPoolStats().getLeased();
+    }
+
+    /**
+     * @return number of requests currently waiting for a connection.
+     */
+    public int pendingConnections() {
+        return getTotalPoolStats().getPending();
+    }
+
+    /**
+     * @return number of idle connections currently available for reuse.
+     */
+    public int availableConnections() {
+        return getTotalPoolStats().getAvailable();
+    }
+
+    private PoolStats getTotalPoolStats() {
+        return getHttpClient().getConnectionPoolStatistics().get("total");
+    }
+
+    protected HttpClient getHttpClient() {
+        return getEnvironment().getHttpClient();
+    }
+
+    //// end: methods to configure and inspect the (shared) connection pool
+
     public String getContentType() {
         return contentType;
     }
@@ -15,6 +15,15 @@ public class JsonHttpTest extends HttpTest {
         return postToImpl(jsonEncodeCurrentValues(), serviceUrl);
     }
 
+    /**
+     * Queues HTTP POST of all values (as JSON object) to service endpoint, it will be sent by #sendBatch().
+     * @param serviceUrl service endpoint to send values to.
+     * @return number of request in batch (to be passed to #useResponseOfBatchRequest()).
+     */
+    public int queuePostValuesAsJsonTo(String serviceUrl) {
+        return queuePost(jsonEncodeCurrentValues(), serviceUrl);
+    }
+
     protected String jsonEncodeCurrentValues() {
         return new JSONObject(getCurrentValues()).toString();
     }
@@ -1,12 +1,14 @@
 package nl.hsac.fitnesse.fixture.slim;
 
 import nl.hsac.fitnesse.fixture.util.HttpServer;
+import nl.hsac.fitnesse.fixture.util.MockResponseRule;
 import nl.hsac.fitnesse.fixture.util.MockXmlHttpResponseSequence;
 import nl.hsac.fitnesse.fixture.util.XmlHttpResponse;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
 
 /**
  * Fixture allowing you to host a SOAP server inside FitNesse. This mock server can then be called by a system you
@@ -18,8 +20,11 @@ import java.util.Map;
  */
 public class MockXmlServerSetup extends SlimFixture {
     private static final Map<String, HttpServer<? extends MockXmlHttpResponseSequence>> SERVERS = new HashMap<String, HttpServer<? extends MockXmlHttpResponseSequence>>();
+    // listener per number of threads, so a server is never added to a listener with another threading mode
+    private static final Map<Integer, HttpServer<?>> SHARED_LISTENERS = new HashMap<Integer, HttpServer<?>>();
     public static final String DEFAULT_PATH = "/FitNesseMock";
     private final String path;
+    private final int threads;
     private final HttpServer<? extends MockXmlHttpResponseSequence> mockServer;
 
     public static HttpServer<? extends MockXmlHttpResponseSequence> getMockServer(String aPath) {
@@ -46,7 +51,19 @@ public class MockXmlServerSetup extends SlimFixture {
     }
 
     public MockXmlServerSetup(String aPath) {
+        this(aPath, 0);
+    }
+
+    /**
+     * Creates new. Servers for different paths, created with the same number of threads, share a port (and its
+     * threads).
+     * @param aPath path server should listen on.
+     * @param aThreads number of threads to handle requests concurrently with,
+     *                 0 to handle one request at a time.
+     */
+    public MockXmlServerSetup(String aPath, int aThreads) {
         path = cleanupValue(aPath);
+        threads = aThreads;
         if (SERVERS.containsKey(path)) {
             mockServer = getMockServer(path);
         } else {
@@ -56,7 +73,44 @@ public class MockXmlServerSetup extends SlimFixture {
     }
 
     protected HttpServer<? extends MockXmlHttpResponseSequence> createMockServer(String aPath) {
-        return new HttpServer<MockXmlHttpResponseSequence>(aPath, new MockXmlHttpResponseSequence());
+        MockXmlHttpResponseSequence responses = new MockXmlHttpResponseSequence();
+        HttpServer<MockXmlHttpResponseSequence> server;
+        HttpServer<?> listener = getSharedListener();
+        if (listener == null) {
+            if (threads > 0) {
+                server = new HttpServer<MockXmlHttpResponseSequence>(aPath, responses,
+                                                                    Executors.newFixedThreadPool(threads), 0);
+            } else {
+                server = new HttpServer<MockXmlHttpResponseSequence>(aPath, responses);
+            }
+            SHARED_LISTENERS.put(threads, server);
+        } else {
+            // serve path on existing port, instead of opening a new one (and threads) per path
+            server = new HttpServer<MockXmlHttpResponseSequence>(listener, aPath, responses);
+        }
+        return server;
+    }
+
+    /**
+     * @return running server with same number of threads as this fixture, whose listener can be used to serve
+     *          another path, null if there is none.
+     */
+    protected HttpServer<?> getSharedListener() {
+        HttpServer<?> result = SHARED_LISTENERS.get(threads);
+        if (result != null && !result.isListenerActive()) {
+            SHARED_LISTENERS.remove(threads);
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Sets port range mock servers will listen on (by default a port assigned by operating system is used).
+     * @param min lowest port number to use.
+     * @param max highest port number to use.
+     */
+    public void setPortRangeFromTo(int min, int max) {
+        HttpServer.setPortRange(min, max);
     }
 
     public void addResponse(String aResponse) {
@@ -68,9 +122,72 @@ public class MockXmlServerSetup extends SlimFixture {
         response.setStatusCode(aStatusCode);
     }
 
+    /**
+     * Adds response to be served to first request with method and path specified, regardless of order received.
+     * @param aResponse response to send.
+     * @param method HTTP method of request ('*' for any).
+     * @param aPath path of request, including server's path ('*' for any).
+     */
+    public void addResponseForRequestTo(String aResponse, String method, String aPath) {
+        addResponseImpl(aResponse, createRule(method, aPath));
+    }
+
+    /**
+     * Adds response to be served to first request with method, path and header value specified.
+     * @param aResponse response to send.
+     * @param method HTTP method of request ('*' for any).
+     * @param aPath path of request, including server's path ('*' for any).
+     * @param header name of header request must contain.
+     * @param value value header must have.
+     */
+    public void addResponseForRequestToWithHeaderValue(String aResponse, String method, String aPath,
+                                                       String header, String value) {
+        MockResponseRule rule = createRule(method, aPath);
+        rule.setHeader(header, value);
+        addResponseImpl(aResponse, rule);
+    }
+
+    /**
+     * Adds response to be served to first request with method and path specified, whose body has the XPath value.
+     * @param aResponse response to send.
+     * @param method HTTP method of request ('*' for any).
+     * @param aPath path of request, including server's path ('*' for any).
+     * @param xPath expression to evaluate on request.
+     * @param value value expression must have.
+     */
+    public void addResponseForRequestToWhereXPathIs(String aResponse, String method, String aPath,
+                                                   String xPath, String value) {
+        MockResponseRule rule = createRule(method, aPath);
+        rule.setXPath(xPath, value);
+        addResponseImpl(aResponse, rule);
+    }
+
+    /**
+     * Adds response to be served to first request with method and path specified, whose body has the JSONPath value.
+     * @param aResponse response to send.
+     * @param method HTTP method of request ('*' for any).
+     * @param aPath path of request, including server's path ('*' for any).
+     * @param jsonPath expression to evaluate on request.
+     * @param value value expression must have.
+     */
+    public void addResponseForRequestToWhereJsonPathIs(String aResponse, String method, String aPath,
+                                                      String jsonPath, String value) {
+        MockResponseRule rule = createRule(method, aPath);
+        rule.setJsonPath(jsonPath, value);
+        addResponseImpl(aResponse, rule);
+    }
+
+    protected MockResponseRule createRule(String method, String aPath) {
+        return new MockResponseRule(cleanupValue(method), cleanupValue(aPath));
+    }
+
     protected XmlHttpResponse addResponseImpl(String aResponse) {
+        return addResponseImpl(aResponse, null);
+    }
+
+    protected XmlHttpResponse addResponseImpl(String aResponse, MockResponseRule rule) {
         String responseBody = cleanupBody(aResponse);
-        return getResponse().addResponse(responseBody);
+        return getResponse().addResponse(rule, responseBody);
     }
 
     protected String cleanupBody(String body) {
@@ -100,6 +217,37 @@ public class MockXmlServerSetup extends SlimFixture {
         return true;
     }
 
+    /**
+     * @param sequential whether requests should be handled strictly one at a time, in order of arrival.
+     */
+    public void setHandleRequestsSequentially(boolean sequential) {
+        mockServer.setHandleSequentially(sequential);
+    }
+
+    /**
+     * Waits until the mock server has received the specified number of requests.
+     * @param count number of requests to wait for.
+     * @param maxWait maximum time (in milliseconds) to wait.
+     * @return true if the requests were received in time.
+     */
+    public boolean waitForRequestsWithinMilliseconds(int count, long maxWait) {
+        return mockServer.waitForRequests(count, maxWait);
+    }
+
+    /**
+     * @return moments (as milliseconds since epoch) requests arrived, in order of arrival.
+     */
+    public List<Long> requestArrivalTimes() {
+        return mockServer.getRequestArrivalTimes();
+    }
+
+    /**
+     * @return time (in milliseconds) it took to handle each request received.
+     */
+    public List<Long> requestLatencies() {
+        return mockServer.getRequestLatencies();
+    }
+
     public void stop() {
         removeMockServer(path);
     }
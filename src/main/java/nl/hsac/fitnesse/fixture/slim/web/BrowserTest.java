@@ -24,7 +24,9 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class BrowserTest extends SlimFixture {
@@ -34,8 +36,15 @@ public class BrowserTest extends SlimFixture {
     private int secondsBeforeTimeout;
     private int secondsBeforePageLoadTimeout;
     private int waitAfterScroll = 150;
+    private int pollIntervalMillis = seleniumHelper.getDefaultPollIntervalMillis();
+    private int maxPollIntervalMillis = seleniumHelper.getDefaultMaxPollIntervalMillis();
+    private int currentPollIntervalMillis = -1;
+    private int currentMaxPollIntervalMillis = -1;
+    private int pollCountOfLastStep;
+    private final Map<String, Integer> pollCounts = new LinkedHashMap<String, Integer>();
     private String screenshotBase = new File(filesDir, "screenshots").getPath() + "/";
     private String screenshotHeight = "200";
+    private boolean screenshotThumbnails = false;
     private String downloadBase = new File(filesDir, "downloads").getPath() + "/";
     private String pageSourceBase = new File(filesDir, "pagesources").getPath() + "/";
 
@@ -78,6 +87,18 @@ public class BrowserTest extends SlimFixture {
                 }
             }
         };
+        currentPollIntervalMillis = waitUntil.pollIntervalMillis();
+        currentMaxPollIntervalMillis = waitUntil.maxPollIntervalMillis();
+        try {
+            return invokedWrappedInWaitUntil(waitUntil, condition);
+        } finally {
+            currentPollIntervalMillis = -1;
+            currentMaxPollIntervalMillis = -1;
+            recordPollCount(method.getName());
+        }
+    }
+
+    private Object invokedWrappedInWaitUntil(WaitUntil waitUntil, ExpectedCondition<Object> condition) {
         Object result;
         switch (waitUntil.value()) {
             case STOP_TEST:
@@ -97,6 +118,12 @@ public class BrowserTest extends SlimFixture {
         return result;
     }
 
+    private void recordPollCount(String methodName) {
+        pollCountOfLastStep = getSeleniumHelper().getLastWaitPollCount();
+        Integer total = pollCounts.get(methodName);
+        pollCounts.put(methodName, total == null ? pollCountOfLastStep : total + pollCountOfLastStep);
+    }
+
     protected Object superInvoke(FixtureInteraction interaction, Method method, Object[] arguments) throws InvocationTargetException, IllegalAccessException {
         return super.invoke(interaction, method, arguments);
     }
@@ -587,16 +614,28 @@ public class BrowserTest extends SlimFixture {
     }
 
     public boolean waitForTagWithText(String tagName, String expectedText) {
-        return waitForElementWithText(By.tagName(tagName), expectedText);
+        return waitForElementWithText(false, tagName, expectedText);
     }
 
     public boolean waitForClassWithText(String cssClassName, String expectedText) {
-        return waitForElementWithText(By.className(cssClassName), expectedText);
+        return waitForElementWithText(true, cssClassName, expectedText);
+    }
+
+    protected boolean waitForElementWithText(boolean byClass, String name, String expectedText) {
+        String textToLookFor = cleanExpectedValue(expectedText);
+        long waitStart = System.currentTimeMillis();
+        Boolean seenInBrowser = getSeleniumHelper().waitForElementWithTextInBrowser(
+                                    timeoutMillis(), byClass, name, textToLookFor);
+        By by = byClass ? By.className(name) : By.tagName(name);
+        return waitForElementWithText(seenInBrowser, waitStart, by, textToLookFor);
     }
 
     protected boolean waitForElementWithText(final By by, String expectedText) {
-        final String textToLookFor = cleanExpectedValue(expectedText);
-        return waitUntilOrStop(new ExpectedCondition<Boolean>() {
+        return waitForElementWithText(null, System.currentTimeMillis(), by, cleanExpectedValue(expectedText));
+    }
+
+    private boolean waitForElementWithText(Boolean seenInBrowser, long waitStart, final By by, final String textToLookFor) {
+        return waitUntilOrStop(seenInBrowser, waitStart, new ExpectedCondition<Boolean>() {
             @Override
             public Boolean apply(WebDriver webDriver) {
                 boolean ok = false;
@@ -654,15 +693,26 @@ public class BrowserTest extends SlimFixture {
         return ok;
     }
 
-    @WaitUntil(TimeoutPolicy.STOP_TEST)
-    public boolean waitForVisible(String place) {
-        Boolean result = Boolean.FALSE;
-        WebElement element = getElementToCheckVisibility(place);
-        if (element != null) {
-            scrollIfNotOnScreen(element);
-            result = element.isDisplayed();
+    public boolean waitForVisible(final String place) {
+        // not annotated with @WaitUntil, as that would repeat the wait in the browser: polls are counted here
+        try {
+            long waitStart = System.currentTimeMillis();
+            Boolean seenInBrowser = getSeleniumHelper().waitForVisibleInBrowser(timeoutMillis(), place);
+            return waitUntilOrStop(seenInBrowser, waitStart, new ExpectedCondition<Boolean>() {
+                @Override
+                public Boolean apply(WebDriver webDriver) {
+                    Boolean result = Boolean.FALSE;
+                    WebElement element = getElementToCheckVisibility(place);
+                    if (element != null) {
+                        scrollIfNotOnScreen(element);
+                        result = element.isDisplayed();
+                    }
+                    return result;
+                }
+            });
+        } finally {
+            recordPollCount("waitForVisible");
         }
-        return result;
     }
 
     /**
@@ -670,13 +720,19 @@ public class BrowserTest extends SlimFixture {
      */
     @Deprecated
     public boolean waitForXPathVisible(String xPath) {
+        long waitStart = System.currentTimeMillis();
+        Boolean seenInBrowser = getSeleniumHelper().waitForVisibleInBrowser(timeoutMillis(), "xpath=" + xPath);
         By by = By.xpath(xPath);
-        return waitForVisible(by);
+        return waitForVisible(seenInBrowser, waitStart, by);
     }
 
     @Deprecated
     protected boolean waitForVisible(final By by) {
-        return waitUntilOrStop(new ExpectedCondition<Boolean>() {
+        return waitForVisible(null, System.currentTimeMillis(), by);
+    }
+
+    private boolean waitForVisible(Boolean seenInBrowser, long waitStart, final By by) {
+        return waitUntilOrStop(seenInBrowser, waitStart, new ExpectedCondition<Boolean>() {
             @Override
             public Boolean apply(WebDriver webDriver) {
                 Boolean result = Boolean.FALSE;
@@ -976,6 +1032,55 @@ public class BrowserTest extends SlimFixture {
         waitAfterScroll = msToWait;
     }
 
+    /**
+     * @param waitInBrowser true if steps waiting for an element to become visible or to get a text should let the
+     *                      browser notify when that happens (default), false to only poll from here.
+     */
+    public void waitInBrowser(boolean waitInBrowser) {
+        getSeleniumHelper().setBrowserSideWaits(waitInBrowser);
+    }
+
+    /**
+     * @param interval time (in milliseconds) to wait after first unsuccessful attempt of a step that waits
+     *                 for a condition. After each subsequent attempt the time waited is doubled.
+     */
+    public void pollIntervalMilliseconds(int interval) {
+        pollIntervalMillis = interval;
+    }
+
+    /**
+     * @param interval maximum time (in milliseconds) to wait between attempts of a step that waits
+     *                 for a condition, must be positive.
+     */
+    public void maxPollIntervalMilliseconds(int interval) {
+        if (interval <= 0) {
+            throw new SlimFixtureException(false, "Max poll interval must be positive, but was: " + interval);
+        }
+        maxPollIntervalMillis = interval;
+    }
+
+    /**
+     * @return number of attempts made by last step that waited for a condition.
+     */
+    public int pollCountOfLastStep() {
+        return pollCountOfLastStep;
+    }
+
+    /**
+     * @return total number of attempts made, per method that waited for a condition.
+     */
+    public Map<String, Integer> pollCounts() {
+        return new LinkedHashMap<String, Integer>(pollCounts);
+    }
+
+    /**
+     * @param cache true if elements found should be reused until the page changes (default),
+     *              false to search for them every time.
+     */
+    public void cacheElementLookups(boolean cache) {
+        getSeleniumHelper().setCacheElementLookups(cache);
+    }
+
     protected String getElementText(WebElement element) {
         String result = null;
         if (element != null) {
@@ -1073,6 +1178,10 @@ public class BrowserTest extends SlimFixture {
         return secondsBeforeTimeout;
     }
 
+    protected int timeoutMillis() {
+        return secondsBeforeTimeout() * 1000;
+    }
+
     /**
      * @param timeout number of seconds before waiting for a new page to load will throw a TimeOutException.
      */
@@ -1123,6 +1232,40 @@ public class BrowserTest extends SlimFixture {
         screenshotHeight = height;
     }
 
+    /**
+     * @param createThumbnails true if a thumbnail (of screenshotShowHeight pixels high) should be created for each
+     *                         screenshot, to be shown instead of the (scaled down) screenshot itself.
+     */
+    public void screenshotThumbnails(boolean createThumbnails) {
+        screenshotThumbnails = createThumbnails;
+    }
+
+    /**
+     * @param format format to save screenshots in: 'png' (default) or 'jpg'.
+     */
+    public void screenshotFormat(String format) {
+        try {
+            getSeleniumHelper().setScreenshotFormat(format);
+        } catch (IllegalArgumentException e) {
+            throw new SlimFixtureException(false, e.getMessage());
+        }
+    }
+
+    /**
+     * @param quality compression quality (percentage) for screenshots saved as 'jpg'.
+     */
+    public void screenshotQuality(int quality) {
+        getSeleniumHelper().setScreenshotQuality(quality);
+    }
+
+    /**
+     * @param inBackground true if screenshots and page sources should be written to disk on a background thread
+     *                     (default), false to write them before the step continues.
+     */
+    public void saveScreenshotsInBackground(boolean inBackground) {
+        getEnvironment().getBackgroundFileWriter().setEnabled(inBackground);
+    }
+
     /**
      * @return (escaped) HTML content of current page.
      */
@@ -1162,7 +1305,8 @@ public class BrowserTest extends SlimFixture {
         String html = getSeleniumHelper().getHtml();
         if (html != null) {
             try {
-                String file = FileUtil.saveToFile(getPageSourceName(fileName), "html", html.getBytes("utf-8"));
+                String file = getEnvironment().getBackgroundFileWriter()
+                                .write(getPageSourceName(fileName), "html", html.getBytes("utf-8"));
                 String wikiUrl = getWikiUrl(file);
                 if (wikiUrl != null) {
                     // make href to file
@@ -1205,8 +1349,13 @@ public class BrowserTest extends SlimFixture {
                 wikiUrl = String.format("<a href=\"%s\">%s</a>",
                         wikiUrl, screenshotFile);
             } else {
-                wikiUrl = String.format("<a href=\"%1$s\"><img src=\"%1$s\" title=\"%2$s\" height=\"%3$s\"/></a>",
-                        wikiUrl, screenshotFile, screenshotHeight);
+                String thumbnail = getSeleniumHelper().getThumbnail(screenshotFile);
+                String thumbnailUrl = thumbnail == null ? null : getWikiUrl(thumbnail);
+                if (thumbnailUrl == null) {
+                    thumbnailUrl = wikiUrl;
+                }
+                wikiUrl = String.format("<a href=\"%1$s\"><img src=\"%4$s\" title=\"%2$s\" height=\"%3$s\"/></a>",
+                        wikiUrl, screenshotFile, screenshotHeight, thumbnailUrl);
             }
             screenshotFile = wikiUrl;
         }
@@ -1215,7 +1364,7 @@ public class BrowserTest extends SlimFixture {
 
     private String createScreenshot(String basename) {
         String name = getScreenshotBasename(basename);
-        return getSeleniumHelper().takeScreenshot(name);
+        return getSeleniumHelper().takeScreenshot(name, getThumbnailHeight());
     }
 
     private String createScreenshot(String basename, Throwable t) {
@@ -1225,11 +1374,19 @@ public class BrowserTest extends SlimFixture {
             screenshotFile = createScreenshot(basename);
         } else {
             String name = getScreenshotBasename(basename);
-            screenshotFile = getSeleniumHelper().writeScreenshot(name, screenshotInException);
+            screenshotFile = getSeleniumHelper().writeScreenshot(name, screenshotInException, getThumbnailHeight());
         }
         return screenshotFile;
     }
 
+    private int getThumbnailHeight() {
+        int result = 0;
+        if (screenshotThumbnails && screenshotHeight.matches("\\d+")) {
+            result = Integer.parseInt(screenshotHeight);
+        }
+        return result;
+    }
+
     private String getScreenshotBasename(String basename) {
         return screenshotBase + basename;
     }
@@ -1268,6 +1425,30 @@ public class BrowserTest extends SlimFixture {
         }
     }
 
+    /**
+     * Waits until the condition evaluates to a value that is neither null nor
+     * false, after the browser waited for it. If that does not occur the whole test is stopped.
+     * @param <T> the return type of the method, which must not be Void
+     * @param seenInBrowser result of waiting in the browser (using SeleniumHelper's waitInBrowser()) for
+     *                      a Javascript version of the condition. When false condition is only evaluated once more,
+     *                      otherwise it is polled for what is left of secondsBeforeTimeout.
+     * @param waitStart time (as System.currentTimeMillis()) waiting started, i.e. before browser started waiting.
+     * @param condition condition to evaluate to determine whether waiting can be stopped.
+     * @throws TimeoutStopTestException if condition was not met before secondsBeforeTimeout.
+     * @return result of condition.
+     */
+    protected <T> T waitUntilOrStop(Boolean seenInBrowser, long waitStart, ExpectedCondition<T> condition) {
+        long remaining = 0;
+        if (!Boolean.FALSE.equals(seenInBrowser)) {
+            remaining = Math.max(0, timeoutMillis() - (System.currentTimeMillis() - waitStart));
+        }
+        try {
+            return waitUntilImpl(remaining, condition);
+        } catch (TimeoutException e) {
+            return handleTimeoutException(e);
+        }
+    }
+
     /**
      * Waits until the condition evaluates to a value that is neither null nor
      * false. If that does not occur null is returned.
@@ -1285,7 +1466,13 @@ public class BrowserTest extends SlimFixture {
     }
 
     protected <T> T waitUntilImpl(ExpectedCondition<T> condition) {
-        return getSeleniumHelper().waitUntil(secondsBeforeTimeout(), condition);
+        return waitUntilImpl(timeoutMillis(), condition);
+    }
+
+    protected <T> T waitUntilImpl(long maxMillisToWait, ExpectedCondition<T> condition) {
+        int interval = currentPollIntervalMillis < 0 ? pollIntervalMillis : currentPollIntervalMillis;
+        int maxInterval = currentMaxPollIntervalMillis < 0 ? maxPollIntervalMillis : currentMaxPollIntervalMillis;
+        return getSeleniumHelper().waitUntilMillis(maxMillisToWait, interval, maxInterval, condition);
     }
 
     protected <T> T handleTimeoutException(TimeoutException e) {
@@ -1455,15 +1642,14 @@ public class BrowserTest extends SlimFixture {
         if (urlOrLink != null) {
             String url = getUrl(urlOrLink);
             BinaryHttpResponse resp = new BinaryHttpResponse();
+            // stream content directly to file in files section
+            resp.setDownloadBase(downloadBase);
             getUrlContent(url, resp);
-            byte[] content = resp.getResponseContent();
-            if (content == null) {
+            String downloadedFile = resp.getDownloadedFile();
+            if (downloadedFile == null) {
                 result = resp.getResponse();
             } else {
                 String fileName = resp.getFileName();
-                String baseName = FilenameUtils.getBaseName(fileName);
-                String ext = FilenameUtils.getExtension(fileName);
-                String downloadedFile = FileUtil.saveToFile(getDownloadName(baseName), ext, content);
                 String wikiUrl = getWikiUrl(downloadedFile);
                 if (wikiUrl != null) {
                     // make href to file
@@ -1517,10 +1703,6 @@ public class BrowserTest extends SlimFixture {
         return result;
     }
 
-    private String getDownloadName(String baseName) {
-        return downloadBase + baseName;
-    }
-
     /**
      * GETs content of specified URL, using the browsers cookies.
      * @param url url to retrieve content from
@@ -5,6 +5,7 @@ import nl.hsac.fitnesse.fixture.slim.SlimFixture;
 import nl.hsac.fitnesse.fixture.slim.SlimFixtureException;
 import nl.hsac.fitnesse.fixture.util.SauceLabsHelper;
 import nl.hsac.fitnesse.fixture.util.SeleniumHelper;
+import nl.hsac.fitnesse.fixture.util.WebDriverPool;
 import org.openqa.selenium.Capabilities;
 import org.openqa.selenium.Platform;
 import org.openqa.selenium.WebDriver;
@@ -21,6 +22,7 @@ import java.net.URL;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.TreeMap;
 import org.json.JSONException;
 import org.json.JSONObject;
 /**
@@ -61,12 +63,16 @@ public class SeleniumDriverSetup extends SlimFixture {
         if (!WebDriver.class.isAssignableFrom(driverClass)) {
             throw new SlimFixtureException(false, driverClassName + " does not implement " + WebDriver.class.getName());
         }
+        final String poolKey = driverClassName;
         SeleniumHelper.DriverFactory driverFactory = new SeleniumHelper.DriverFactory() {
             @Override
             public void createDriver() {
                 try {
-                    Object driver = driverClass.newInstance();
-                    setDriver((WebDriver) driver);
+                    WebDriver driver = getDriverPool().acquire(poolKey);
+                    if (driver == null) {
+                        driver = (WebDriver) driverClass.newInstance();
+                    }
+                    setDriver(driver, poolKey);
                 } catch (RuntimeException e) {
                     throw e;
                 } catch (Exception e) {
@@ -281,15 +287,20 @@ public class SeleniumDriverSetup extends SlimFixture {
 
         String cleanUrl = cleanupValue(url);
         final URL remoteUrl = new URL(cleanUrl);
+        final String poolKey = cleanUrl + " " + new TreeMap<String, Object>(desiredCapabilities.asMap());
         SeleniumHelper.DriverFactory driverFactory = new SeleniumHelper.DriverFactory() {
             @Override
             public void createDriver() {
-                RemoteWebDriver remoteWebDriver = new RemoteWebDriver(remoteUrl, desiredCapabilities);
-                FileDetector fd = remoteWebDriver.getFileDetector();
-                if (fd == null || fd instanceof UselessFileDetector) {
-                    remoteWebDriver.setFileDetector(new LocalFileDetector());
+                WebDriver driver = getDriverPool().acquire(poolKey);
+                if (driver == null) {
+                    RemoteWebDriver remoteWebDriver = new RemoteWebDriver(remoteUrl, desiredCapabilities);
+                    FileDetector fd = remoteWebDriver.getFileDetector();
+                    if (fd == null || fd instanceof UselessFileDetector) {
+                        remoteWebDriver.setFileDetector(new LocalFileDetector());
+                    }
+                    driver = remoteWebDriver;
                 }
-                setDriver(remoteWebDriver);
+                setDriver(driver, poolKey);
             }
         };
         WebDriver driver = setAndUseDriverFactory(driverFactory);
@@ -315,9 +326,9 @@ public class SeleniumDriverSetup extends SlimFixture {
         return getHelper().driver();
     }
 
-    private void setDriver(WebDriver webDriver) {
+    private void setDriver(WebDriver webDriver, String poolKey) {
         SeleniumHelper helper = getHelper();
-        helper.setWebDriver(webDriver);
+        helper.setWebDriver(webDriver, poolKey);
     }
 
     /**
@@ -335,6 +346,28 @@ public class SeleniumDriverSetup extends SlimFixture {
         return true;
     }
 
+    /**
+     * @param reuse true if drivers stopped should be kept, so they can be reused when the same browser is
+     *              requested again, false if they should be quit.
+     */
+    public void setReuseDrivers(boolean reuse) {
+        getDriverPool().setEnabled(reuse);
+    }
+
+    /**
+     * @param maxUses number of times a driver may be used before it is quit instead of reused.
+     */
+    public void setMaxDriverUses(int maxUses) {
+        getDriverPool().setMaxUses(maxUses);
+    }
+
+    /**
+     * @param timeout number of seconds a driver that is not used is kept, before it is quit.
+     */
+    public void setDriverIdleTimeoutSeconds(int timeout) {
+        getDriverPool().setIdleTimeoutMillis(timeout * 1000L);
+    }
+
     /**
      * Prevents instances from creating new Selenium drivers.
      * This can be used to control Selenium configuration independent from Wiki content.
@@ -353,4 +386,8 @@ public class SeleniumDriverSetup extends SlimFixture {
     protected SeleniumHelper getHelper() {
         return Environment.getInstance().getSeleniumHelper();
     }
+
+    protected WebDriverPool getDriverPool() {
+        return Environment.getInstance().getWebDriverPool();
+    }
 }
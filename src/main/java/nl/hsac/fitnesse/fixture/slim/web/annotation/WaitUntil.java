@@ -15,4 +15,16 @@ public @interface WaitUntil {
      * @return How to handle a timeout.
      */
     TimeoutPolicy value() default TimeoutPolicy.THROW;
+
+    /**
+     * @return time (in milliseconds) to wait after first unsuccessful attempt, negative to use fixture's setting.
+     * After each subsequent unsuccessful attempt the time to wait is doubled (until maxPollIntervalMillis).
+     */
+    int pollIntervalMillis() default -1;
+
+    /**
+     * @return maximum time (in milliseconds) to wait between attempts, negative to use fixture's setting.
+     * Zero is not allowed, as that would mean attempts are made without waiting at all.
+     */
+    int maxPollIntervalMillis() default -1;
 }
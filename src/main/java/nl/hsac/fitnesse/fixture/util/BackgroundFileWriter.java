@@ -0,0 +1,205 @@
+package nl.hsac.fitnesse.fixture.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes files (e.g. screenshots and page sources) on a background thread, so tests do not have to wait for
+ * encoding and disk I/O. The name of each file is determined (and the file created empty) immediately, so
+ * tests can refer to it right away.
+ * At most a limited number of writes are queued, when the queue is full the test's thread writes the file itself.
+ * All queued writes are completed when flush() is called (e.g. at the end of each page) or the JVM exits.
+ * A failed background write is reported by the next call to flush(), so a missing file does not go unnoticed.
+ */
+public class BackgroundFileWriter {
+    private final Object lock = new Object();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile boolean enabled = true;
+    private volatile int queueSize = 20;
+    private ThreadPoolExecutor executor;
+    private int pending = 0;
+    private RuntimeException firstFailure;
+
+    /**
+     * Saves content to new file.
+     * @param baseName name for file created (without extension),
+     *                 if a file already exists with the supplied name an
+     *                 '_index' will be added.
+     * @param extension extension for file.
+     * @param content data to store in file.
+     * @return absolute path of file created.
+     */
+    public String write(String baseName, String extension, final byte[] content) {
+        final File file = FileUtil.createNewFile(baseName, extension);
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                writeFile(file, content);
+            }
+        });
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * Performs task on background thread (or, if writer is disabled or its queue is full, on the current thread).
+     * @param task task (writing a file) to perform.
+     */
+    public void execute(final Runnable task) {
+        if (enabled) {
+            synchronized (lock) {
+                pending++;
+            }
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runTask(task);
+                    } finally {
+                        synchronized (lock) {
+                            pending--;
+                            if (pending == 0) {
+                                lock.notifyAll();
+                            }
+                        }
+                    }
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+
+    /**
+     * Waits until all queued files are written.
+     * @throws RuntimeException first failure of a background write since the previous flush, if any.
+     */
+    public void flush() {
+        RuntimeException failure;
+        synchronized (lock) {
+            while (pending > 0) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            failure = firstFailure;
+            firstFailure = null;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Writes content to file.
+     * @param file file to write to.
+     * @param content content to write.
+     */
+    public static void writeFile(File file, byte[] content) {
+        try {
+            OutputStream os = new FileOutputStream(file);
+            try {
+                os.write(content);
+            } finally {
+                os.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write: " + file.getAbsolutePath(), e);
+        }
+    }
+
+    private void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            // nobody is waiting for the result, so we keep it to be reported by flush()
+            failures.incrementAndGet();
+            synchronized (lock) {
+                if (firstFailure == null) {
+                    firstFailure = e;
+                }
+            }
+        }
+    }
+
+    private ThreadPoolExecutor getExecutor() {
+        synchronized (lock) {
+            if (executor == null) {
+                executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<Runnable>(queueSize),
+                        new ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable r) {
+                                Thread thread = new Thread(r, "BackgroundFileWriter");
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        },
+                        new ThreadPoolExecutor.CallerRunsPolicy());
+                Runtime.getRuntime().addShutdownHook(new Thread("BackgroundFileWriter flush") {
+                    @Override
+                    public void run() {
+                        try {
+                            flush();
+                        } catch (RuntimeException e) {
+                            // JVM is exiting, nobody else can report it
+                            e.printStackTrace();
+                        }
+                    }
+                });
+            }
+            return executor;
+        }
+    }
+
+    /**
+     * @return whether files are written on a background thread.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param writeInBackground true if files should be written on a background thread,
+     *                          false if they should be written immediately.
+     */
+    public void setEnabled(boolean writeInBackground) {
+        try {
+            if (!writeInBackground) {
+                flush();
+            }
+        } finally {
+            enabled = writeInBackground;
+        }
+    }
+
+    /**
+     * @return maximum number of writes waiting for the background thread.
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * @param size maximum number of writes waiting for the background thread (only used before first write).
+     */
+    public void setQueueSize(int size) {
+        queueSize = size;
+    }
+
+    /**
+     * @return number of background writes that failed.
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+}
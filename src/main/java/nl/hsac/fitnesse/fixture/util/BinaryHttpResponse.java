@@ -1,17 +1,68 @@
 package nl.hsac.fitnesse.fixture.util;
 
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 
 public class BinaryHttpResponse extends HttpResponse {
     private byte[] responseContent;
     private String fileName;
+    private String downloadBase;
+    private String downloadedFile;
 
+    /**
+     * @return content received. When content was streamed to a file, the file is read on each call (so its content
+     *          is not kept in memory), use #getContentStream() to prevent loading the content completely.
+     */
     public byte[] getResponseContent() {
-        return responseContent;
+        byte[] result = responseContent;
+        if (result == null && downloadedFile != null) {
+            try {
+                result = FileUtils.readFileToByteArray(new File(downloadedFile));
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to read: " + downloadedFile, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return stream to read content received from (caller must close it), null if no content was received.
+     */
+    public InputStream getContentStream() {
+        InputStream result = null;
+        if (responseContent != null) {
+            result = new ByteArrayInputStream(responseContent);
+        } else if (downloadedFile != null) {
+            try {
+                result = new FileInputStream(downloadedFile);
+            } catch (FileNotFoundException e) {
+                throw new RuntimeException("Unable to read: " + downloadedFile, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return number of bytes received, -1 if no content was received.
+     */
+    public long getContentLength() {
+        long result = -1;
+        if (responseContent != null) {
+            result = responseContent.length;
+        } else if (downloadedFile != null) {
+            result = new File(downloadedFile).length();
+        }
+        return result;
     }
 
     public void setResponseContent(byte[] aResponseContent) {
@@ -36,11 +87,40 @@ public class BinaryHttpResponse extends HttpResponse {
         this.fileName = aFileName;
     }
 
+    /**
+     * @return directory (including trailing separator, and possibly a file name prefix) content will be
+     *          streamed to, null if content is to be kept in memory.
+     */
+    public String getDownloadBase() {
+        return downloadBase;
+    }
+
+    /**
+     * When set the content received will be written directly to a file, instead of being kept in memory.
+     * @param aDownloadBase directory (including trailing separator, and possibly a file name prefix) to store
+     *                      content in. The file's name will be based on #getFileName().
+     */
+    public void setDownloadBase(String aDownloadBase) {
+        downloadBase = aDownloadBase;
+    }
+
+    /**
+     * @return absolute path of file content was streamed to, null if no download base was set.
+     */
+    public String getDownloadedFile() {
+        return downloadedFile;
+    }
+
+    public void setDownloadedFile(String aDownloadedFile) {
+        downloadedFile = aDownloadedFile;
+    }
+
     @Override
     public String getResponse() {
         String result = null;
-        if (responseContent != null) {
-            result = new Base64().encodeToString(responseContent);
+        byte[] content = getResponseContent();
+        if (content != null) {
+            result = new Base64().encodeToString(content);
         } else {
             result = super.getResponse();
         }
@@ -59,14 +139,15 @@ public class BinaryHttpResponse extends HttpResponse {
         } else {
             responseContent = null;
         }
+        downloadedFile = null;
         super.setResponse(aResponse);
     }
 
     @Override
     public String toString() {
         String result;
-        if (getFileName() != null && responseContent != null) {
-            result = getFileName() + ": " + responseContent.length + " bytes";
+        if (getFileName() != null && (downloadedFile != null || responseContent != null)) {
+            result = getFileName() + ": " + getContentLength() + " bytes";
         } else {
             result = getClass().getName() + ": " + getRequest();
         }
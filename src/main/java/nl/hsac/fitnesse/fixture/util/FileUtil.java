@@ -1,13 +1,32 @@
 package nl.hsac.fitnesse.fixture.util;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * File utilities.
  */
 public final class FileUtil {
-    private static final int BUFFER_SIZE = 4096;
+    private static final int BUFFER_SIZE = 64 * 1024;
     private static final String FILE_ENCODING = "UTF-8";
+    // maximum number of base names whose last index is remembered
+    private static final int MAX_FILE_INDICES = 1000;
+    private static final Map<String, AtomicInteger> LAST_FILE_INDICES =
+            new LinkedHashMap<String, AtomicInteger>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, AtomicInteger> eldest) {
+                    return size() > MAX_FILE_INDICES;
+                }
+            };
 
     private FileUtil() {
         // ensure no instance is made.
@@ -33,17 +52,16 @@ public final class FileUtil {
      * Copies UTF-8 input stream's content to a string (closes the stream).
      * @param is input stream (UTF-8) to read.
      * @param name description for stream in error messages.
-     * @return content of stream
+     * @return content of stream (empty string if stream has no content).
      * @throws RuntimeException if content could not be read.
      */
     public static String streamToString(InputStream is, String name) {
-        String result = null;
+        String result;
         try {
-            try {
-                result = new java.util.Scanner(is, FILE_ENCODING).useDelimiter("\\A").next();
-            } catch (java.util.NoSuchElementException e) {
-                throw new IllegalStateException("Unable to read: " + name + ". Error: " + e.getMessage(), e);
-            }
+            ByteBuffer content = readFully(is);
+            result = new String(content.array(), 0, content.limit(), FILE_ENCODING);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read: " + name + ". Error: " + e.getMessage(), e);
         } finally {
             try {
                 is.close();
@@ -55,6 +73,57 @@ public final class FileUtil {
         return result;
     }
 
+    /**
+     * Reads content of UTF-8 file to String. The file is read through its channel into a buffer of the file's size.
+     * It is not memory mapped: a mapping keeps the file locked (on Windows) until it is garbage collected, and
+     * callers often delete or replace the file right after reading it.
+     * @param file file to read.
+     * @return file's content.
+     * @throws IllegalArgumentException if file could not be found.
+     * @throws IllegalStateException if file could not be read.
+     */
+    public static String readFile(File file) {
+        FileInputStream fis;
+        try {
+            fis = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            throw new IllegalArgumentException("Unable to locate: " + file.getAbsolutePath(), e);
+        }
+        return streamToString(fis, file.getAbsolutePath());
+    }
+
+    /**
+     * Reads all remaining content of stream, using a buffer sized to the content when that is known
+     * (does not close the stream).
+     * @param is stream to read.
+     * @return buffer containing content (in its array from 0 up to its limit).
+     * @throws IOException in case of I/O errors.
+     */
+    private static ByteBuffer readFully(InputStream is) throws IOException {
+        ReadableByteChannel channel;
+        int expectedSize;
+        if (is instanceof FileInputStream) {
+            FileChannel fileChannel = ((FileInputStream) is).getChannel();
+            channel = fileChannel;
+            expectedSize = (int) Math.min(Integer.MAX_VALUE - 1, fileChannel.size() - fileChannel.position());
+        } else {
+            channel = Channels.newChannel(is);
+            expectedSize = is.available();
+        }
+        // one extra byte, so we do not have to grow buffer just to detect the end
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(expectedSize + 1, 1));
+        while (channel.read(buffer) != -1) {
+            if (!buffer.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, BUFFER_SIZE));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
     /**
      * Copy the contents of the given InputStream to the given OutputStream.
      * Closes both streams when done.
@@ -65,15 +134,15 @@ public final class FileUtil {
      */
     public static int copy(InputStream in, OutputStream out) throws IOException {
         try {
-            int byteCount = 0;
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int bytesRead = -1;
-            while ((bytesRead = in.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
-                byteCount += bytesRead;
+            long byteCount;
+            if (in instanceof FileInputStream && out instanceof FileOutputStream) {
+                // let the OS copy directly from file to file
+                byteCount = transfer(((FileInputStream) in).getChannel(), ((FileOutputStream) out).getChannel());
+            } else {
+                byteCount = copy(Channels.newChannel(in), Channels.newChannel(out));
+                out.flush();
             }
-            out.flush();
-            return byteCount;
+            return (int) byteCount;
         } finally {
             try {
                 in.close();
@@ -88,6 +157,32 @@ public final class FileUtil {
         }
     }
 
+    private static long transfer(FileChannel in, FileChannel out) throws IOException {
+        long position = in.position();
+        long size = in.size();
+        long byteCount = 0;
+        while (position + byteCount < size) {
+            byteCount += in.transferTo(position + byteCount, size - position - byteCount, out);
+        }
+        in.position(position + byteCount);
+        return byteCount;
+    }
+
+    private static long copy(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        long byteCount = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        int bytesRead;
+        while ((bytesRead = in.read(buffer)) != -1) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+            byteCount += bytesRead;
+        }
+        return byteCount;
+    }
+
     /**
      * Writes content to file, in UTF-8 encoding.
      * @param filename file to create or overwrite.
@@ -143,24 +238,135 @@ public final class FileUtil {
         return result;
     }
 
+    /**
+     * Saves content of stream to new file (closes the stream).
+     * @param baseName name for file created (without extension),
+     *                 if a file already exists with the supplied name an
+     *                 '_index' will be added.
+     * @param extension extension for file.
+     * @param content data to store in file.
+     * @return absolute path of created file.
+     */
+    public static String saveToFile(String baseName, String extension, InputStream content) {
+        File output = determineFilename(baseName, extension);
+        try {
+            copy(content, new FileOutputStream(output));
+        } catch (IOException e) {
+            try {
+                content.close();
+            } catch (IOException ex) {
+                // original exception is more relevant
+            }
+            throw new RuntimeException(e);
+        }
+        return output.getAbsolutePath();
+    }
+
+    /**
+     * Creates new (empty) file, so its name is reserved for content written later (e.g. in the background).
+     * @param baseName name for file created (without extension),
+     *                 if a file already exists with the supplied name an
+     *                 '_index' will be added.
+     * @param extension extension for file.
+     * @return created file.
+     */
+    public static File createNewFile(String baseName, String extension) {
+        return determineFilename(baseName, extension);
+    }
+
+    /**
+     * Creates a new file, whose name is not yet in use. Instead of checking each candidate name, we keep
+     * the last index used per base name (for the most recently used base names). The directory is listed
+     * to determine that index initially, and again when the index no longer matches the files present
+     * (i.e. the last file created was removed, or files were created by someone not using this class).
+     * @param baseName name for file created (without extension).
+     * @param extension extension for file.
+     * @return created (empty) file.
+     */
     private static File determineFilename(String baseName, String extension) {
-        File output = new File(baseName + "." + extension);
+        File base = new File(baseName).getAbsoluteFile();
         // ensure directory exists
-        File parent = output.getAbsoluteFile().getParentFile();
+        File parent = base.getParentFile();
         if (!parent.exists()) {
-            if (!parent.mkdirs()) {
+            if (!parent.mkdirs() && !parent.isDirectory()) {
                 throw new IllegalArgumentException(
                         "Unable to create directory: "
                                 + parent.getAbsolutePath());
             }
         }
-        int i = 0;
-        // determine first filename not yet in use.
-        while (output.exists()) {
-            i++;
-            String name = String.format("%s_%s.%s", baseName, i, extension);
-            output = new File(name);
+        AtomicInteger lastIndex = getLastIndex(base, extension);
+        int last = lastIndex.get();
+        if (last >= 0 && !getIndexedFile(baseName, extension, last).exists()) {
+            // files were removed since index was determined
+            lastIndex.compareAndSet(last, findLastIndex(base, extension));
+        }
+        File output;
+        try {
+            while (true) {
+                output = getIndexedFile(baseName, extension, lastIndex.incrementAndGet());
+                if (output.createNewFile()) {
+                    break;
+                }
+                // file was created by someone not using this class, maybe many more were
+                raiseTo(lastIndex, findLastIndex(base, extension));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to create file for: " + baseName, e);
         }
         return output;
     }
+
+    private static File getIndexedFile(String baseName, String extension, int index) {
+        File result;
+        if (index == 0) {
+            result = new File(baseName + "." + extension);
+        } else {
+            result = new File(String.format("%s_%s.%s", baseName, index, extension));
+        }
+        return result;
+    }
+
+    private static void raiseTo(AtomicInteger lastIndex, int value) {
+        int current = lastIndex.get();
+        while (current < value && !lastIndex.compareAndSet(current, value)) {
+            current = lastIndex.get();
+        }
+    }
+
+    private static AtomicInteger getLastIndex(File base, String extension) {
+        String key = base.getPath() + "." + extension;
+        AtomicInteger result;
+        synchronized (LAST_FILE_INDICES) {
+            result = LAST_FILE_INDICES.get(key);
+        }
+        if (result == null) {
+            // list directory without holding lock
+            AtomicInteger lastIndex = new AtomicInteger(findLastIndex(base, extension));
+            synchronized (LAST_FILE_INDICES) {
+                result = LAST_FILE_INDICES.get(key);
+                if (result == null) {
+                    result = lastIndex;
+                    LAST_FILE_INDICES.put(key, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int findLastIndex(File base, String extension) {
+        int result = -1;
+        String[] names = base.getParentFile().list();
+        if (names != null) {
+            Pattern pattern = Pattern.compile(
+                    Pattern.quote(base.getName()) + "(?:_(\\d{1,9}))?" + Pattern.quote("." + extension));
+            for (String name : names) {
+                Matcher matcher = pattern.matcher(name);
+                if (matcher.matches()) {
+                    String index = matcher.group(1);
+                    result = Math.max(result, index == null ? 0 : Integer.parseInt(index));
+                }
+            }
+        }
+        return result;
+    }
 }
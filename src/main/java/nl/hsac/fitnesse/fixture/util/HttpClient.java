@@ -1,8 +1,10 @@
 package nl.hsac.fitnesse.fixture.util;
 
+import org.apache.commons.io.FilenameUtils;
 import org.apache.http.Header;
 import org.apache.http.HeaderElement;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.CookieStore;
 import org.apache.http.client.methods.HttpDelete;
@@ -10,27 +12,80 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HTTP;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Helper to make Http calls and get response.
+ * Connections are pooled, the pool's limits can be changed at runtime.
  */
 public class HttpClient {
-    private final static org.apache.http.client.HttpClient HTTP_CLIENT;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final org.apache.http.client.HttpClient httpClient;
+    private volatile long keepAliveMillis = -1;
+    private long responseSpoolThreshold = 4 * 1024 * 1024;
+    private long idleConnectionTimeoutMillis = -1;
+    private ScheduledExecutorService evictionExecutor;
+    private ScheduledFuture<?> evictionTask;
 
-    static {
-        HTTP_CLIENT = HttpClients.custom().useSystemProperties().disableContentCompression()
+    /**
+     * Creates new, with a connection pool sized using the 'http.maxConnections' system property.
+     */
+    public HttpClient() {
+        connectionManager = createConnectionManager();
+        httpClient = HttpClients.custom().useSystemProperties()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(new KeepAliveStrategy())
+                .disableContentCompression()
                 .setUserAgent(HttpClient.class.getName()).build();
     }
 
+    protected PoolingHttpClientConnectionManager createConnectionManager() {
+        // when we supply our own connection manager the builder will not configure SSL based on system properties
+        Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", SSLConnectionSocketFactory.getSystemSocketFactory())
+                .build();
+        PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager(registry);
+        // same defaults HttpClientBuilder uses when honouring system properties
+        if ("true".equalsIgnoreCase(System.getProperty("http.keepAlive", "true"))) {
+            int max = Integer.parseInt(System.getProperty("http.maxConnections", "5"));
+            manager.setDefaultMaxPerRoute(max);
+            manager.setMaxTotal(2 * max);
+        }
+        return manager;
+    }
+
     /**
      * @param url URL of service
      * @param response response pre-populated with request to send. Response content and
@@ -39,10 +94,21 @@ public class HttpClient {
      * @param type contentType for request.
      */
     public void post(String url, HttpResponse response, Map<String, Object> headers, String type) {
-        HttpPost methodPost = new HttpPost(url);
         ContentType contentType = ContentType.parse(type);
         HttpEntity ent = new StringEntity(response.getRequest(), contentType);
-        methodPost.setEntity(ent);
+        post(url, response, headers, ent);
+    }
+
+    /**
+     * @param url URL of service
+     * @param response response pre-populated with request to send. Response content and
+     *          statusCode will be filled.
+     * @param headers http headers to add
+     * @param entity content to post (instead of response's request).
+     */
+    public void post(String url, HttpResponse response, Map<String, Object> headers, HttpEntity entity) {
+        HttpPost methodPost = new HttpPost(url);
+        methodPost.setEntity(entity);
         getResponse(url, response, methodPost, headers);
     }
 
@@ -98,14 +164,22 @@ public class HttpClient {
                 if (response instanceof BinaryHttpResponse) {
                     BinaryHttpResponse binaryHttpResponse = (BinaryHttpResponse) response;
 
-                    byte[] content = EntityUtils.toByteArray(entity);
-                    binaryHttpResponse.setResponseContent(content);
-
                     String fileName = getAttachmentFileName(resp);
                     binaryHttpResponse.setFileName(fileName);
+
+                    String downloadBase = binaryHttpResponse.getDownloadBase();
+                    if (downloadBase == null) {
+                        byte[] content = EntityUtils.toByteArray(entity);
+                        binaryHttpResponse.setResponseContent(content);
+                    } else {
+                        String name = binaryHttpResponse.getFileName();
+                        String file = FileUtil.saveToFile(downloadBase + FilenameUtils.getBaseName(name),
+                                                            FilenameUtils.getExtension(name),
+                                                            entity.getContent());
+                        binaryHttpResponse.setDownloadedFile(file);
+                    }
                 } else {
-                    String result = EntityUtils.toString(entity);
-                    response.setResponse(result);
+                    storeResponseContent(response, entity);
                 }
             }
         } catch (Exception e) {
@@ -115,6 +189,87 @@ public class HttpClient {
         }
     }
 
+    /**
+     * Stores entity's content in response, without converting it to a String. Content larger than
+     * #getResponseSpoolThreshold() is written to a temporary file instead of being kept in memory, this file is
+     * deleted when the content is read, or the response is replaced or released (see HttpResponse#release()).
+     * @param response response to store content in.
+     * @param entity entity received.
+     * @throws IOException if content could not be read.
+     */
+    protected void storeResponseContent(HttpResponse response, HttpEntity entity) throws IOException {
+        InputStream content = entity.getContent();
+        if (content == null) {
+            response.setResponse(null);
+        } else {
+            try {
+                Charset charset = getCharset(entity);
+                long threshold = responseSpoolThreshold;
+                long length = entity.getContentLength();
+                int initialSize = length > 0 && length <= threshold ? (int) length : 4096;
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream(initialSize);
+                byte[] chunk = new byte[8192];
+                int read;
+                while (buffer.size() <= threshold && (read = content.read(chunk)) != -1) {
+                    buffer.write(chunk, 0, read);
+                }
+                if (buffer.size() <= threshold) {
+                    response.setRawResponse(buffer.toByteArray(), charset);
+                } else {
+                    File spoolFile = File.createTempFile("response", ".tmp");
+                    boolean spooled = false;
+                    try {
+                        OutputStream out = new FileOutputStream(spoolFile);
+                        try {
+                            buffer.writeTo(out);
+                        } catch (IOException e) {
+                            out.close();
+                            throw e;
+                        }
+                        // allow buffer to be garbage collected while we copy the remainder
+                        buffer = null;
+                        FileUtil.copy(content, out);
+                        spooled = true;
+                    } finally {
+                        if (!spooled) {
+                            spoolFile.delete();
+                        }
+                    }
+                    response.setSpooledResponse(spoolFile, charset);
+                }
+            } finally {
+                content.close();
+            }
+        }
+    }
+
+    private Charset getCharset(HttpEntity entity) {
+        // same logic as EntityUtils.toString()
+        Charset charset = null;
+        ContentType contentType = ContentType.get(entity);
+        if (contentType != null) {
+            charset = contentType.getCharset();
+        }
+        if (charset == null) {
+            charset = HTTP.DEF_CONTENT_CHARSET;
+        }
+        return charset;
+    }
+
+    /**
+     * @return size (in bytes) above which text responses are stored in a temporary file, instead of in memory.
+     */
+    public long getResponseSpoolThreshold() {
+        return responseSpoolThreshold;
+    }
+
+    /**
+     * @param threshold size (in bytes) above which text responses are stored in a temporary file, instead of in memory.
+     */
+    public void setResponseSpoolThreshold(long threshold) {
+        responseSpoolThreshold = threshold;
+    }
+
     private String getAttachmentFileName(org.apache.http.HttpResponse resp) {
         String fileName = null;
         Header[] contentDisp = resp.getHeaders("content-disposition");
@@ -138,10 +293,165 @@ public class HttpClient {
     protected org.apache.http.HttpResponse getHttpResponse(CookieStore store, String url, HttpRequestBase method) throws IOException {
         HttpContext localContext = new BasicHttpContext();
         localContext.setAttribute(HttpClientContext.COOKIE_STORE, store);
-        return HTTP_CLIENT.execute(method, localContext);
+        return httpClient.execute(method, localContext);
     }
 
     protected org.apache.http.HttpResponse getHttpResponse(String url, HttpRequestBase method) throws IOException {
-        return HTTP_CLIENT.execute(method);
+        return httpClient.execute(method);
+    }
+
+    /**
+     * @return maximum number of connections in pool (over all routes).
+     */
+    public int getMaxTotalConnections() {
+        return connectionManager.getMaxTotal();
+    }
+
+    /**
+     * @param maxTotal maximum number of connections in pool (over all routes).
+     */
+    public void setMaxTotalConnections(int maxTotal) {
+        connectionManager.setMaxTotal(maxTotal);
+    }
+
+    /**
+     * @return maximum number of connections per route, unless configured otherwise for a specific host.
+     */
+    public int getMaxConnectionsPerRoute() {
+        return connectionManager.getDefaultMaxPerRoute();
+    }
+
+    /**
+     * @param maxPerRoute maximum number of connections per route, unless configured otherwise for a specific host.
+     */
+    public void setMaxConnectionsPerRoute(int maxPerRoute) {
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+    }
+
+    /**
+     * @param url url (only scheme, host and port are used) to configure limit for.
+     * @return maximum number of connections to url's host.
+     */
+    public int getMaxConnectionsFor(String url) {
+        return connectionManager.getMaxPerRoute(getRoute(url));
+    }
+
+    /**
+     * @param url url (only scheme, host and port are used) to configure limit for.
+     * @param max maximum number of connections to url's host.
+     */
+    public void setMaxConnectionsFor(String url, int max) {
+        connectionManager.setMaxPerRoute(getRoute(url), max);
+    }
+
+    private HttpRoute getRoute(String url) {
+        URI uri = URI.create(url);
+        String scheme = uri.getScheme();
+        boolean secure = "https".equalsIgnoreCase(scheme);
+        int port = uri.getPort();
+        if (port < 0) {
+            port = secure ? 443 : 80;
+        }
+        HttpHost host = new HttpHost(uri.getHost(), port, scheme);
+        return new HttpRoute(host, null, secure);
+    }
+
+    /**
+     * @return maximum time (in milliseconds) a connection is kept alive when idle, -1 if server's 'Keep-Alive' header decides.
+     */
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    /**
+     * @param keepAlive maximum time (in milliseconds) to keep connections alive when idle,
+     *                  -1 to let server's 'Keep-Alive' header decide (if no header is sent connections are kept indefinitely).
+     */
+    public void setKeepAliveMillis(long keepAlive) {
+        keepAliveMillis = keepAlive;
+    }
+
+    /**
+     * @return time (in milliseconds) of inactivity after which a pooled connection is validated before reuse.
+     */
+    public int getValidateAfterInactivityMillis() {
+        return connectionManager.getValidateAfterInactivity();
+    }
+
+    /**
+     * @param millis time (in milliseconds) of inactivity after which a pooled connection is validated before reuse,
+     *               a value &lt;= 0 disables validation.
+     */
+    public void setValidateAfterInactivityMillis(int millis) {
+        connectionManager.setValidateAfterInactivity(millis);
+    }
+
+    /**
+     * @return time (in milliseconds) after which idle connections are evicted from pool, -1 if they are not.
+     */
+    public synchronized long getIdleConnectionTimeoutMillis() {
+        return idleConnectionTimeoutMillis;
+    }
+
+    /**
+     * Configures background thread to close expired connections, and connections that are idle for too long.
+     * @param timeout time (in milliseconds) after which idle connections are closed, a value &lt;= 0 stops eviction.
+     */
+    public synchronized void setIdleConnectionTimeoutMillis(final long timeout) {
+        if (evictionTask != null) {
+            evictionTask.cancel(false);
+            evictionTask = null;
+        }
+        if (timeout > 0) {
+            if (evictionExecutor == null) {
+                evictionExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "HttpClient idle connection evictor");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            }
+            long interval = Math.max(timeout / 2, 100);
+            evictionTask = evictionExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    connectionManager.closeExpiredConnections();
+                    connectionManager.closeIdleConnections(timeout, TimeUnit.MILLISECONDS);
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+            idleConnectionTimeoutMillis = timeout;
+        } else {
+            idleConnectionTimeoutMillis = -1;
+        }
+    }
+
+    /**
+     * @return statistics of connection pool: overall (key 'total') and per route (key: scheme, host and port).
+     */
+    public Map<String, PoolStats> getConnectionPoolStatistics() {
+        Map<String, PoolStats> result = new LinkedHashMap<String, PoolStats>();
+        result.put("total", connectionManager.getTotalStats());
+        for (HttpRoute route : connectionManager.getRoutes()) {
+            result.put(route.getTargetHost().toURI(), connectionManager.getStats(route));
+        }
+        return result;
+    }
+
+    /**
+     * Keep alive strategy honouring server's 'Keep-Alive' header, but never exceeding configured maximum.
+     */
+    private class KeepAliveStrategy extends DefaultConnectionKeepAliveStrategy {
+        @Override
+        public long getKeepAliveDuration(org.apache.http.HttpResponse response, HttpContext context) {
+            long serverDuration = super.getKeepAliveDuration(response, context);
+            long max = keepAliveMillis;
+            long result = serverDuration;
+            if (max > 0 && (serverDuration <= 0 || serverDuration > max)) {
+                result = max;
+            }
+            return result;
+        }
     }
 }
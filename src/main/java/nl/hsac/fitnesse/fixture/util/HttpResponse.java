@@ -1,9 +1,14 @@
 package nl.hsac.fitnesse.fixture.util;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.CookieStore;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -15,9 +20,14 @@ public class HttpResponse {
 
     private Map<String, String> responseHeaders = new HashMap<String, String>();
     private String request;
+    private boolean requestTruncated;
     protected String response;
+    private byte[] rawResponse;
+    private File spooledResponse;
+    private Charset responseCharset;
     private int statusCode;
     private CookieStore cookieStore;
+    private volatile boolean shared;
 
     /**
      * @throws RuntimeException if no valid response is available
@@ -43,12 +53,43 @@ public class HttpResponse {
      */
     public void setRequest(String aRequest) {
         request = aRequest;
+        requestTruncated = false;
+    }
+
+    /**
+     * Stores request received by a mock server.
+     * Subclasses may override this to select their response based on more than just the request body, by
+     * default only the body is stored.
+     * @param method HTTP method of request.
+     * @param path path of request.
+     * @param headers headers of request.
+     * @param aRequest request received.
+     */
+    public void setRequest(String method, String path, Map<String, List<String>> headers, String aRequest) {
+        setRequest(aRequest);
+    }
+
+    /**
+     * @return true if request only contains the start of the request actually sent.
+     */
+    public boolean isRequestTruncated() {
+        return requestTruncated;
+    }
+
+    /**
+     * @param truncated whether request only contains the start of the request actually sent.
+     */
+    public void setRequestTruncated(boolean truncated) {
+        requestTruncated = truncated;
     }
 
     /**
      * @return the response
      */
     public String getResponse() {
+        if (response == null) {
+            convertRawResponse();
+        }
         return response;
     }
 
@@ -56,9 +97,68 @@ public class HttpResponse {
      * @param aResponse the response to set
      */
     public void setResponse(String aResponse) {
+        clearRawResponse();
         response = aResponse;
     }
 
+    /**
+     * Sets response content, which will only be converted to a String when #getResponse() is called.
+     * @param content bytes received.
+     * @param charset character set to use when converting content.
+     */
+    public void setRawResponse(byte[] content, Charset charset) {
+        setResponse(null);
+        rawResponse = content;
+        responseCharset = charset;
+    }
+
+    /**
+     * Sets response content, stored in a (temporary) file, which will only be read when #getResponse() is called.
+     * The file will be deleted once it is read, or the response is replaced.
+     * @param content file containing the bytes received.
+     * @param charset character set to use when converting content.
+     */
+    public void setSpooledResponse(File content, Charset charset) {
+        setResponse(null);
+        spooledResponse = content;
+        responseCharset = charset;
+    }
+
+    private void convertRawResponse() {
+        if (rawResponse != null) {
+            response = new String(rawResponse, responseCharset);
+            rawResponse = null;
+        } else if (spooledResponse != null) {
+            try {
+                response = FileUtils.readFileToString(spooledResponse, responseCharset);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to read response from: " + spooledResponse.getAbsolutePath(), e);
+            } finally {
+                clearRawResponse();
+            }
+        }
+    }
+
+    /**
+     * Releases content received that was not yet converted to a String (e.g. deletes the temporary file
+     * a large response was stored in). Should be called when the response is no longer needed.
+     * Responses made available for later retrieval (via #toString() and #parse()) are not released, as their
+     * content may still be needed.
+     */
+    public void release() {
+        if (!shared) {
+            clearRawResponse();
+        }
+    }
+
+    private void clearRawResponse() {
+        rawResponse = null;
+        if (spooledResponse != null) {
+            spooledResponse.delete();
+            spooledResponse = null;
+        }
+    }
+
     /**
      * @return the statusCode
      */
@@ -102,6 +202,7 @@ public class HttpResponse {
         // we make sure these could later be retrieved
         // see also: parse()
         String result = super.toString();
+        shared = true;
         INSTANCES.put(result, this);
         return result;
     }
@@ -1,5 +1,6 @@
 package nl.hsac.fitnesse.fixture.util;
 
+import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import org.apache.http.entity.ContentType;
@@ -7,9 +8,16 @@ import org.apache.http.entity.ContentType;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.BindException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -17,30 +25,99 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class HttpServer <T extends HttpResponse> {
     private static final ContentType XML_UTF8_TYPE = ContentType.parse(XmlHttpResponse.CONTENT_TYPE_XML_TEXT_UTF8);
+    private static volatile int minPort = 0;
+    private static volatile int maxPort = 0;
 
     private final T response;
     private final com.sun.net.httpserver.HttpServer server;
+    private final ExecutorService executor;
+    private final HttpContext context;
+    private final AtomicInteger listenerUsers;
+    private final AtomicBoolean stopped = new AtomicBoolean(false);
     private final AtomicInteger requestsReceived = new AtomicInteger(0);
+    // only copied when statistics are requested, not each time a request is received
+    private final Queue<Long> requestLatencies = new ConcurrentLinkedQueue<Long>();
+    private final Queue<Long> requestArrivals = new ConcurrentLinkedQueue<Long>();
     private final Object lock = new Object();
+    private final Object requestReceivedMonitor = new Object();
+    private volatile boolean handleSequentially;
 
     /**
-     * Creates new.
+     * Creates new, handling one request at a time.
      * @param aPath context the server will serve (must start with '/').
      * @param aResponse response to send when request is received, request will
      *                  be added to it when this server receives one.
      */
     public HttpServer(String aPath, T aResponse) {
+        this(aPath, aResponse, null, 1);
+    }
+
+    /**
+     * Creates new, which handles requests concurrently (if an executor is supplied).
+     * Reading requests and writing responses happens concurrently, storing the request received
+     * and selecting the response to send is always done one request at a time.
+     * @param aPath context the server will serve (must start with '/').
+     * @param aResponse response to send when request is received, request will
+     *                  be added to it when this server receives one.
+     * @param anExecutor executor to handle requests (will be shut down when server is stopped),
+     *                   null to handle all requests one at a time on the server's own thread.
+     * @param backlog maximum number of incoming connections to queue, 0 for system default.
+     */
+    public HttpServer(String aPath, T aResponse, ExecutorService anExecutor, int backlog) {
         response = aResponse;
+        executor = anExecutor;
+        listenerUsers = new AtomicInteger(1);
+        handleSequentially = anExecutor == null;
         try {
             server = com.sun.net.httpserver.HttpServer.create();
-            bind(server);
-            server.createContext(aPath, getHandler(aResponse));
+            bind(server, backlog);
+            server.setExecutor(anExecutor);
+            context = server.createContext(aPath, getHandler(aResponse));
             server.start();
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
     }
 
+    /**
+     * Creates new, serving an additional context on the same address (and threads) as another server.
+     * The shared listener is only stopped once all servers using it are stopped (the other server may already be
+     * stopped, as long as its listener is still used by another server).
+     * @param sharedListener server whose listener should also serve this server's path.
+     * @param aPath context the server will serve (must start with '/' and not be served by listener already).
+     * @param aResponse response to send when request is received, request will
+     *                  be added to it when this server receives one.
+     */
+    public HttpServer(HttpServer<?> sharedListener, String aPath, T aResponse) {
+        response = aResponse;
+        server = sharedListener.server;
+        executor = sharedListener.executor;
+        listenerUsers = sharedListener.listenerUsers;
+        handleSequentially = executor == null;
+        synchronized (listenerUsers) {
+            if (listenerUsers.get() < 1) {
+                throw new IllegalStateException("Listener is already stopped");
+            }
+            context = server.createContext(aPath, getHandler(aResponse));
+            // only count this server as user once it is actually served, otherwise listener could never be stopped
+            listenerUsers.incrementAndGet();
+        }
+    }
+
+    /**
+     * Sets port range new servers will bind to.
+     * By default (or when max is 0) servers bind to a port assigned by the operating system.
+     * @param min lowest port number to use.
+     * @param max highest port number to use.
+     */
+    public static void setPortRange(int min, int max) {
+        if (max < min) {
+            throw new IllegalArgumentException("Max port (" + max + ") must not be lower than min (" + min + ")");
+        }
+        minPort = min;
+        maxPort = max;
+    }
+
     /**
      * @return address the server listens on.
      */
@@ -63,115 +140,204 @@ public class HttpServer <T extends HttpResponse> {
     }
 
     /**
+     * @return time (in milliseconds) from arrival of each request received until its response was sent
+     *          (including time spent waiting for other requests to be handled), in order of completion.
+     */
+    public List<Long> getRequestLatencies() {
+        return new ArrayList<Long>(requestLatencies);
+    }
+
+    /**
+     * @return whether the listener this server uses is still running (i.e. whether it can be shared with a new server).
+     */
+    public boolean isListenerActive() {
+        synchronized (listenerUsers) {
+            return listenerUsers.get() > 0;
+        }
+    }
+
+    /**
+     * @return whether requests are handled one at a time (i.e. strictly in order of arrival).
+     */
+    public boolean isHandleSequentially() {
+        return handleSequentially;
+    }
+
+    /**
+     * @param sequential whether requests should be handled one at a time (i.e. strictly in order of arrival),
+     *                   even if an executor is available to handle them concurrently.
+     */
+    public void setHandleSequentially(boolean sequential) {
+        handleSequentially = sequential;
+    }
+
+    /**
+     * @return moments (as System.currentTimeMillis()) requests arrived, in order of arrival.
+     */
+    public List<Long> getRequestArrivalTimes() {
+        return new ArrayList<Long>(requestArrivals);
+    }
+
+    /**
+     * Waits for a request to be received and stops server.
      * @param maxWait ms to wait at most.
      * @return response with last request filled, if at least one was received.
      */
     public T waitForRequest(long maxWait) {
-        long start = System.currentTimeMillis();
         try {
-            while (requestsReceived.get() < 1
-                    && (System.currentTimeMillis() - start) < maxWait) {
+            waitForRequests(1, maxWait);
+        } finally {
+            stopServer();
+        }
+
+        return getResponse();
+    }
+
+    /**
+     * Waits until the server has handled the specified number of requests (server keeps running).
+     * @param count number of requests to wait for.
+     * @param maxWait ms to wait at most.
+     * @return true if count requests were received within maxWait.
+     */
+    public boolean waitForRequests(int count, long maxWait) {
+        long deadline = System.currentTimeMillis() + maxWait;
+        synchronized (requestReceivedMonitor) {
+            while (requestsReceived.get() < count) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
                 try {
-                    Thread.sleep(50);
+                    requestReceivedMonitor.wait(remaining);
                 } catch (InterruptedException ex) {
                     throw new RuntimeException(ex);
                 }
             }
-        } finally {
-            stopServer();
         }
-
-        return getResponse();
+        return requestsReceived.get() >= count;
     }
 
     /**
-     * Stops server from listening.
+     * Stops server from listening. If the listener is shared with other servers
+     * only this server's path is no longer served.
      */
     public void stopServer() {
-        synchronized (lock) {
-            server.stop(0);
+        if (stopped.compareAndSet(false, true)) {
+            boolean lastUser;
+            synchronized (listenerUsers) {
+                lastUser = listenerUsers.decrementAndGet() == 0;
+            }
+            synchronized (lock) {
+                if (lastUser) {
+                    server.stop(0);
+                } else {
+                    server.removeContext(context);
+                }
+            }
+            if (lastUser && executor != null) {
+                executor.shutdown();
+            }
         }
     }
 
-    private void bind(com.sun.net.httpserver.HttpServer server) {
+    private void bind(com.sun.net.httpserver.HttpServer server, int backlog) {
         try {
             InetAddress address = InetAddress.getLocalHost();
-            int port = getFreePort();
-            InetSocketAddress isa = new InetSocketAddress(address, port);
-            server.bind(isa, 1);
-        } catch (Exception ex) {
+            int min = minPort;
+            int max = maxPort;
+            if (max == 0) {
+                server.bind(new InetSocketAddress(address, 0), backlog);
+            } else {
+                bindInRange(server, address, min, max, backlog);
+            }
+        } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
     }
 
-    /**
-     * Finds free port number.
-     * @return first available port number above 8000.
-     */
-    protected int getFreePort() {
-        int port = 0;
-        for (int possiblePort = 8000; port == 0; possiblePort++) {
-            ServerSocket s = null;
+    private void bindInRange(com.sun.net.httpserver.HttpServer server, InetAddress address,
+                             int min, int max, int backlog) throws IOException {
+        for (int port = min; port <= max; port++) {
             try {
-                s = new ServerSocket(possiblePort);
-                port = s.getLocalPort();
-            } catch (IOException e) {
+                server.bind(new InetSocketAddress(address, port), backlog);
+                return;
+            } catch (BindException e) {
                 // try next number
-                continue;
-            } finally {
-                if (s != null) {
-                    try {
-                        s.close();
-                    } catch (IOException e) {
-                        // why would this happen?
-                        throw new IllegalStateException("Unable to close port: " + possiblePort, e);
-                    }
-                }
             }
         }
-        return port;
+        throw new BindException("No free port available in range: " + min + "-" + max);
     }
 
     protected HttpHandler getHandler(final T aResponse) {
         HttpHandler result = new HttpHandler() {
             @Override
             public void handle(HttpExchange he) throws IOException {
-            // ensure we never handle multiple requests at the same time
-            synchronized (lock) {
-                OutputStream os = null;
-                try {
-                    String request;
-                    if ("POST".equals(he.getRequestMethod())) {
-                        InputStream is = he.getRequestBody();
-                        request = FileUtil.streamToString(is, "http POST request");
-                    } else {
-                        request = String.format("%s: %s", he.getRequestMethod(), he.getRequestURI().toString());
-                    }
-                    aResponse.setRequest(request);
-
-                    ContentType contentType = XML_UTF8_TYPE;
-                    byte[] responseBytes = aResponse.getResponse()
-                                            .getBytes(contentType.getCharset());
-                    he.sendResponseHeaders(aResponse.getStatusCode(),
-                                            responseBytes.length);
-                    he.getResponseHeaders()
-                            .add("Content-Type", contentType.toString());
-                    os = he.getResponseBody();
-                    os.write(responseBytes);
-                    os.flush();
-                } finally {
-                    incrementRequestsReceived();
-                    if (os != null) {
-                        os.close();
+                // record arrival before waiting for our turn, so statistics include time spent queued
+                long arrival = System.nanoTime();
+                requestArrivals.add(System.currentTimeMillis());
+                if (handleSequentially) {
+                    synchronized (lock) {
+                        handleRequest(he, aResponse, arrival);
                     }
+                } else {
+                    handleRequest(he, aResponse, arrival);
                 }
             }
-            }
         };
         return result;
     }
 
+    /**
+     * Handles request.
+     * @param he exchange to handle.
+     * @param aResponse response to send.
+     * @param arrival moment (as System.nanoTime()) request arrived.
+     * @throws IOException if request could not be read or response could not be sent.
+     */
+    protected void handleRequest(HttpExchange he, T aResponse, long arrival) throws IOException {
+        OutputStream os = null;
+        try {
+            String request;
+            if ("POST".equals(he.getRequestMethod())) {
+                InputStream is = he.getRequestBody();
+                request = FileUtil.streamToString(is, "http POST request");
+            } else {
+                request = String.format("%s: %s", he.getRequestMethod(), he.getRequestURI().toString());
+            }
+
+            ContentType contentType = XML_UTF8_TYPE;
+            byte[] responseBytes;
+            int statusCode;
+            // storing request and selecting response must be done for one request at a time
+            synchronized (lock) {
+                storeRequest(he, aResponse, request);
+                responseBytes = aResponse.getResponse().getBytes(contentType.getCharset());
+                statusCode = aResponse.getStatusCode();
+            }
+            he.sendResponseHeaders(statusCode, responseBytes.length);
+            he.getResponseHeaders()
+                    .add("Content-Type", contentType.toString());
+            os = he.getResponseBody();
+            os.write(responseBytes);
+            os.flush();
+        } finally {
+            requestLatencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - arrival));
+            incrementRequestsReceived();
+            if (os != null) {
+                os.close();
+            }
+        }
+    }
+
+    protected void storeRequest(HttpExchange he, T aResponse, String request) {
+        aResponse.setRequest(he.getRequestMethod(), he.getRequestURI().getPath(), he.getRequestHeaders(), request);
+    }
+
     protected int incrementRequestsReceived() {
-        return requestsReceived.incrementAndGet();
+        int result = requestsReceived.incrementAndGet();
+        synchronized (requestReceivedMonitor) {
+            requestReceivedMonitor.notifyAll();
+        }
+        return result;
     }
 }
@@ -0,0 +1,161 @@
+package nl.hsac.fitnesse.fixture.util;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Converts (PNG) screenshots to the format to store them in, and creates thumbnails of them.
+ */
+public class ImageEncoder {
+    /**
+     * Format in which screenshots are taken, no conversion needed to store them as such.
+     */
+    public static final String PNG = "png";
+    private final String format;
+    private final float quality;
+
+    /**
+     * Creates new.
+     * @param aFormat format (i.e. extension) to store images in, e.g. 'png' or 'jpg'.
+     * @param aQuality compression quality (between 0 and 1) for lossy formats.
+     */
+    public ImageEncoder(String aFormat, float aQuality) {
+        format = aFormat;
+        quality = aQuality;
+    }
+
+    /**
+     * @param format format (i.e. extension) to check.
+     * @return whether images can be stored in format.
+     */
+    public static boolean isSupported(String format) {
+        return format != null && ImageIO.getImageWritersBySuffix(format).hasNext();
+    }
+
+    /**
+     * Converts image to this encoder's format.
+     * @param png image as PNG.
+     * @return image in this encoder's format.
+     */
+    public byte[] encode(byte[] png) {
+        byte[] result = png;
+        if (!PNG.equalsIgnoreCase(format)) {
+            result = write(read(png));
+        }
+        return result;
+    }
+
+    /**
+     * Creates smaller version of image, in this encoder's format.
+     * @param png image as PNG.
+     * @param height height (in pixels) of thumbnail.
+     * @return thumbnail in this encoder's format, or original image if it was not higher than height.
+     */
+    public byte[] createThumbnail(byte[] png, int height) {
+        BufferedImage image = read(png);
+        byte[] result;
+        if (image.getHeight() <= height) {
+            result = encode(png);
+        } else {
+            int width = Math.max(1, image.getWidth() * height / image.getHeight());
+            result = write(scale(image, width, height));
+        }
+        return result;
+    }
+
+    protected BufferedImage scale(BufferedImage image, int width, int height) {
+        int type = getImageType();
+        BufferedImage result = new BufferedImage(width, height, type);
+        Graphics2D g = result.createGraphics();
+        try {
+            if (type != BufferedImage.TYPE_INT_ARGB) {
+                // formats like JPEG do not support transparency, use white background
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, width, height);
+            }
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return result;
+    }
+
+    protected BufferedImage read(byte[] png) {
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+            if (image == null) {
+                throw new IllegalArgumentException("Content is not an image");
+            }
+            return image;
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read image", e);
+        }
+    }
+
+    protected byte[] write(BufferedImage image) {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersBySuffix(format);
+        if (!writers.hasNext()) {
+            throw new IllegalArgumentException("No support for images of type: " + format);
+        }
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            ImageOutputStream ios = ImageIO.createImageOutputStream(bytes);
+            try {
+                writer.setOutput(ios);
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                if (param.canWriteCompressed() && !PNG.equalsIgnoreCase(format)) {
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    param.setCompressionQuality(quality);
+                }
+                writer.write(null, new IIOImage(toImageType(image), null, null), param);
+            } finally {
+                ios.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write image as: " + format, e);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    private BufferedImage toImageType(BufferedImage image) {
+        BufferedImage result = image;
+        if (image.getType() != getImageType()) {
+            result = scale(image, image.getWidth(), image.getHeight());
+        }
+        return result;
+    }
+
+    private int getImageType() {
+        return PNG.equalsIgnoreCase(format) ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+    }
+
+    /**
+     * @return format (i.e. extension) images are stored in.
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * @return compression quality (between 0 and 1) for lossy formats.
+     */
+    public float getQuality() {
+        return quality;
+    }
+}
@@ -1,12 +1,14 @@
 package nl.hsac.fitnesse.fixture.util;
 
 import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.Option;
-import com.jayway.jsonpath.ParseContext;
 
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Helper to evaluate JsonPath expressions against a JSON object.
@@ -17,7 +19,18 @@ public class JsonPathHelper {
     private final static Configuration CONF = Configuration
                                                 .defaultConfiguration()
                                                 .addOptions(Option.SUPPRESS_EXCEPTIONS);
-    private final static ParseContext CONTEXT = JsonPath.using(CONF);
+    private final static int MAX_COMPILED_PATHS = 500;
+    private final static Map<String, JsonPath> COMPILED_PATHS = Collections.synchronizedMap(
+            new LinkedHashMap<String, JsonPath>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, JsonPath> eldest) {
+                    return size() > MAX_COMPILED_PATHS;
+                }
+            });
+
+    // last json parsed, so that multiple paths on the same content only parse it once
+    private String parsedJson;
+    private DocumentContext parsedContext;
 
     /**
      * Evaluates a JsonPath expression returning a single element.
@@ -27,10 +40,11 @@ public class JsonPathHelper {
      * @throws java.lang.RuntimeException if jsonPath would return multiple elements.
      */
     public Object getJsonPath(String json, String jsonPath) {
-        if (!JsonPath.isPathDefinite(jsonPath)) {
+        JsonPath path = getCompiledPath(jsonPath);
+        if (!path.isDefinite()) {
             throw new RuntimeException(jsonPath + " returns multiple results, not a single.");
         }
-        return CONTEXT.parse(json).read(jsonPath);
+        return parse(json).read(path);
     }
 
     /**
@@ -42,7 +56,8 @@ public class JsonPathHelper {
      */
     public List<Object> getAllJsonPath(String json, String jsonPath) {
         List<Object> result;
-        if (JsonPath.isPathDefinite(jsonPath)) {
+        JsonPath path = getCompiledPath(jsonPath);
+        if (path.isDefinite()) {
             Object val = getJsonPath(json, jsonPath);
             if (val == null) {
                 result = Collections.emptyList();
@@ -50,7 +65,34 @@ public class JsonPathHelper {
                 result = Collections.singletonList(val);
             }
         } else {
-            result = CONTEXT.parse(json).read(jsonPath);
+            result = parse(json).read(path);
+        }
+        return result;
+    }
+
+    /**
+     * Parses json, reusing result of previous call if the same json is supplied again.
+     * @param json JSON value.
+     * @return parsed document.
+     */
+    protected DocumentContext parse(String json) {
+        if (json != parsedJson || parsedContext == null) {
+            // JsonPath.using(CONF).parse() would return a shared, mutable, instance
+            parsedContext = JsonPath.parse(json, CONF);
+            parsedJson = json;
+        }
+        return parsedContext;
+    }
+
+    /**
+     * @param jsonPath expression to compile.
+     * @return compiled version of expression (from cache if it was compiled before).
+     */
+    protected JsonPath getCompiledPath(String jsonPath) {
+        JsonPath result = COMPILED_PATHS.get(jsonPath);
+        if (result == null) {
+            result = JsonPath.compile(jsonPath);
+            COMPILED_PATHS.put(jsonPath, result);
         }
         return result;
     }
@@ -0,0 +1,113 @@
+package nl.hsac.fitnesse.fixture.util;
+
+import nl.hsac.fitnesse.fixture.Environment;
+import org.w3c.dom.Document;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request received by a mock server, used to select the response to send.
+ * Its body is parsed (as XML or JSON) at most once, and each condition (header, XPath or JSONPath) is evaluated
+ * at most once, no matter how many rules use it.
+ */
+public class MockRequest {
+    static final String HEADER_PREFIX = "header:";
+    static final String XPATH_PREFIX = "xpath:";
+    static final String JSON_PATH_PREFIX = "jsonpath:";
+
+    private final Map<String, List<String>> headers;
+    private final String body;
+    private final Map<String, List<String>> values = new HashMap<String, List<String>>();
+    private Document xml;
+    private boolean xmlParsed;
+    private JsonPathHelper jsonPathHelper;
+
+    /**
+     * Creates new.
+     * @param aHeaders headers of request received (may be null).
+     * @param aBody body of request received.
+     */
+    public MockRequest(Map<String, List<String>> aHeaders, String aBody) {
+        headers = aHeaders;
+        body = aBody;
+    }
+
+    /**
+     * Gets value(s) of condition for this request.
+     * @param conditionKey key describing condition, see MockResponseRule#getConditionKey().
+     * @return values request has for condition (empty if it has none, e.g. because the header is not present
+     *          or the body is not XML).
+     */
+    public List<String> getValues(String conditionKey) {
+        List<String> result = values.get(conditionKey);
+        if (result == null) {
+            result = evaluate(conditionKey);
+            values.put(conditionKey, result);
+        }
+        return result;
+    }
+
+    protected List<String> evaluate(String conditionKey) {
+        List<String> result = Collections.emptyList();
+        if (conditionKey.startsWith(HEADER_PREFIX)) {
+            List<String> headerValues = headers == null ? null : headers.get(conditionKey.substring(HEADER_PREFIX.length()));
+            if (headerValues != null) {
+                result = headerValues;
+            }
+        } else if (conditionKey.startsWith(XPATH_PREFIX)) {
+            Document document = getXml();
+            if (document != null) {
+                try {
+                    NamespaceContextImpl context = Environment.getInstance().getNamespaceContext();
+                    String value = XPathHelper.getXPath(context, document, conditionKey.substring(XPATH_PREFIX.length()));
+                    result = Collections.singletonList(value);
+                } catch (RuntimeException e) {
+                    // expression can not be evaluated
+                }
+            }
+        } else if (conditionKey.startsWith(JSON_PATH_PREFIX)) {
+            try {
+                Object value = getJsonPathHelper().getJsonPath(body, conditionKey.substring(JSON_PATH_PREFIX.length()));
+                if (value != null) {
+                    result = Collections.singletonList(value.toString());
+                }
+            } catch (RuntimeException e) {
+                // body is not JSON, or path not present
+            }
+        } else {
+            // no condition
+            result = Collections.singletonList("");
+        }
+        return result;
+    }
+
+    protected Document getXml() {
+        if (!xmlParsed) {
+            xmlParsed = true;
+            try {
+                xml = XPathHelper.parse(body);
+            } catch (RuntimeException e) {
+                // body is not XML
+            }
+        }
+        return xml;
+    }
+
+    protected JsonPathHelper getJsonPathHelper() {
+        if (jsonPathHelper == null) {
+            // a helper only parses the same body once
+            jsonPathHelper = new JsonPathHelper();
+        }
+        return jsonPathHelper;
+    }
+
+    /**
+     * @return body of request.
+     */
+    public String getBody() {
+        return body;
+    }
+}
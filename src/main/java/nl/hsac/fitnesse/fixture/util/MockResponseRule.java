@@ -0,0 +1,156 @@
+package nl.hsac.fitnesse.fixture.util;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rule determining which requests received by a mock server a response is served to.
+ * Method and path are used to look up candidate rules. The rule's first condition (header, XPath or JSONPath)
+ * and its value are used to narrow these candidates further, any other conditions are only evaluated for
+ * the remaining candidates.
+ */
+public class MockResponseRule {
+    /** Value to use for method or path to match any. */
+    public static final String ANY = "*";
+
+    private final String method;
+    private final String path;
+    private String headerName;
+    private String headerValue;
+    private String xPath;
+    private String xPathValue;
+    private String jsonPath;
+    private String jsonPathValue;
+
+    /**
+     * Creates new.
+     * @param aMethod HTTP method to match (null or '*' to match any).
+     * @param aPath request path to match, including the server's context (null or '*' to match any).
+     */
+    public MockResponseRule(String aMethod, String aPath) {
+        method = aMethod == null ? ANY : aMethod.toUpperCase();
+        path = aPath == null ? ANY : aPath;
+    }
+
+    /**
+     * @param name header that must be present in request.
+     * @param value value the header must have.
+     */
+    public void setHeader(String name, String value) {
+        headerName = name;
+        headerValue = value;
+    }
+
+    /**
+     * @param expression XPath to evaluate on request body.
+     * @param value value expression must have.
+     */
+    public void setXPath(String expression, String value) {
+        xPath = expression;
+        xPathValue = value;
+    }
+
+    /**
+     * @param expression JSONPath to evaluate on request body.
+     * @param value value expression must have.
+     */
+    public void setJsonPath(String expression, String value) {
+        jsonPath = expression;
+        jsonPathValue = value;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return key to index rule by.
+     */
+    public String getIndexKey() {
+        return createIndexKey(method, path);
+    }
+
+    /**
+     * Creates key to look up rules by.
+     * @param aMethod HTTP method.
+     * @param aPath request path.
+     * @return key.
+     */
+    public static String createIndexKey(String aMethod, String aPath) {
+        return aMethod + " " + aPath;
+    }
+
+    /**
+     * @return key of condition (other than method and path) to index rule by, empty string if rule has none.
+     */
+    public String getConditionKey() {
+        String result = "";
+        if (headerName != null) {
+            result = MockRequest.HEADER_PREFIX + headerName;
+        } else if (xPath != null) {
+            result = MockRequest.XPATH_PREFIX + xPath;
+        } else if (jsonPath != null) {
+            result = MockRequest.JSON_PATH_PREFIX + jsonPath;
+        }
+        return result;
+    }
+
+    /**
+     * @return value request must have for condition of #getConditionKey().
+     */
+    public String getConditionValue() {
+        String result = "";
+        if (headerName != null) {
+            result = headerValue;
+        } else if (xPath != null) {
+            result = xPathValue;
+        } else if (jsonPath != null) {
+            result = jsonPathValue;
+        }
+        return result;
+    }
+
+    /**
+     * Checks conditions other than method and path (which are used as index key).
+     * @param headers headers of request received.
+     * @param body body of request received.
+     * @return whether this rule applies to the request.
+     */
+    public boolean matches(Map<String, List<String>> headers, String body) {
+        return matches(new MockRequest(headers, body));
+    }
+
+    /**
+     * Checks conditions other than method and path (which are used as index key).
+     * @param request request received.
+     * @return whether this rule applies to the request.
+     */
+    public boolean matches(MockRequest request) {
+        return conditionMatches(request, headerName == null ? null : MockRequest.HEADER_PREFIX + headerName, headerValue)
+                && conditionMatches(request, xPath == null ? null : MockRequest.XPATH_PREFIX + xPath, xPathValue)
+                && conditionMatches(request, jsonPath == null ? null : MockRequest.JSON_PATH_PREFIX + jsonPath, jsonPathValue);
+    }
+
+    private boolean conditionMatches(MockRequest request, String conditionKey, String value) {
+        return conditionKey == null || request.getValues(conditionKey).contains(value);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(getIndexKey());
+        if (headerName != null) {
+            result.append(" [").append(headerName).append(": ").append(headerValue).append("]");
+        }
+        if (xPath != null) {
+            result.append(" [").append(xPath).append(" = ").append(xPathValue).append("]");
+        }
+        if (jsonPath != null) {
+            result.append(" [").append(jsonPath).append(" = ").append(jsonPathValue).append("]");
+        }
+        return result.toString();
+    }
+}
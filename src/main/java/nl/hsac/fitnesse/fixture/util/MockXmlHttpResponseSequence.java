@@ -7,16 +7,44 @@ import org.apache.http.HttpStatus;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * HttpResponse subclass intended to store a sequence of XmlHttpResponses which will be served (in sequence) to
  * clients of a mock HttpServer running inside FitNesse. The request received will be stored as the request in
  * each response before it is returned. Requests for which no response is configured will receive a 404 response,
  * the request is stored in a new XmlHttpResponse object.
+ * Instances are thread safe, so requests may be received while responses are added and checked.
+ * Once a response is added with a MockResponseRule, responses are no longer served in sequence, but each request
+ * gets the first (in the order they were added) unserved response whose rule matches it (responses without rule
+ * match any request).
+ * Rules are indexed by method, path and the value of their first condition. So selecting a response requires
+ * a lookup per distinct condition (e.g. header name or XPath expression) used by the rules, not an evaluation
+ * of each rule. The request's body is parsed at most once.
+ * Responses served in sequence are no longer available to rules, so both ways of selecting a response may be
+ * mixed.
  */
 public class MockXmlHttpResponseSequence extends HttpResponse {
+    private static final String ANY_KEY = MockResponseRule.createIndexKey(MockResponseRule.ANY, MockResponseRule.ANY);
+
     private final List<XmlHttpResponse> responseList = new ArrayList<XmlHttpResponse>();
+    // conditions used by rules, per method and path
+    private final Map<String, Set<String>> ruleConditions = new HashMap<String, Set<String>>();
+    // responses per method, path, condition and value (in order added)
+    private final Map<String, List<IndexedResponse>> ruleIndex = new HashMap<String, List<IndexedResponse>>();
+    // entry per element of responseList (null for responses added for unexpected requests)
+    private final List<IndexedResponse> indexedResponses = new ArrayList<IndexedResponse>();
+    private int ruleCount;
+    // number of responses in responseList without request, i.e. whose request would be in getNotCalled()
+    private int notCalledCount;
+    // number of responses in responseList without response, i.e. whose request would be in getNotExpected()
+    private int emptyResponseCount;
     private int currentIndex;
 
     public <T extends XmlHttpResponse> MockXmlHttpResponseSequence(T... responses) {
@@ -26,7 +54,9 @@ public class MockXmlHttpResponseSequence extends HttpResponse {
     public <T extends XmlHttpResponse> MockXmlHttpResponseSequence(Collection<T> responses) {
         this();
         if (responses != null) {
-            responseList.addAll(responses);
+            for (T response : responses) {
+                addToList(null, response);
+            }
         }
     }
 
@@ -34,24 +64,84 @@ public class MockXmlHttpResponseSequence extends HttpResponse {
         resetCurrentIndex();
     }
 
-    public XmlHttpResponse addResponse(String responseBody) {
+    public synchronized XmlHttpResponse addResponse(String responseBody) {
+        return addResponse(null, responseBody);
+    }
+
+    /**
+     * Adds response to be served to first request matching rule.
+     * @param rule rule request must match (null to match any request).
+     * @param responseBody response to send.
+     * @return response added.
+     */
+    public synchronized XmlHttpResponse addResponse(MockResponseRule rule, String responseBody) {
         XmlHttpResponse newResponse = new XmlHttpResponse();
         newResponse.setStatusCode(HttpStatus.SC_OK);
         newResponse.setResponse(responseBody);
-        responseList.add(newResponse);
+        addToList(rule, newResponse);
         return newResponse;
     }
 
-    public List<? extends XmlHttpResponse> getResponseList() {
-        return responseList;
+    private void addToList(MockResponseRule rule, XmlHttpResponse response) {
+        String key = ANY_KEY;
+        String condition = "";
+        String value = "";
+        if (rule != null) {
+            ruleCount++;
+            key = rule.getIndexKey();
+            condition = rule.getConditionKey();
+            value = rule.getConditionValue();
+        }
+        if (StringUtils.isEmpty(response.getResponse())) {
+            emptyResponseCount++;
+        }
+        if (StringUtils.isEmpty(response.getRequest())) {
+            notCalledCount++;
+        }
+        Set<String> conditions = ruleConditions.get(key);
+        if (conditions == null) {
+            conditions = new LinkedHashSet<String>();
+            ruleConditions.put(key, conditions);
+        }
+        conditions.add(condition);
+        String candidateKey = createCandidateKey(key, condition, value);
+        List<IndexedResponse> candidates = ruleIndex.get(candidateKey);
+        if (candidates == null) {
+            candidates = new LinkedList<IndexedResponse>();
+            ruleIndex.put(candidateKey, candidates);
+        }
+        IndexedResponse indexedResponse = new IndexedResponse(rule, responseList.size());
+        candidates.add(indexedResponse);
+        indexedResponses.add(indexedResponse);
+        responseList.add(response);
+    }
+
+    private static String createCandidateKey(String key, String condition, String value) {
+        return key + "\n" + condition + "\n" + value;
+    }
+
+    public synchronized List<? extends XmlHttpResponse> getResponseList() {
+        return new ArrayList<XmlHttpResponse>(responseList);
     }
 
     public String getExtraRequestsMessage() {
+        synchronized (this) {
+            if (emptyResponseCount == 0) {
+                // no need to inspect (and format) all messages
+                return null;
+            }
+        }
         List<String> extraRequests = getNotExpected();
         return createUnexpectedMessage("%s extra request(s) received: %s", extraRequests);
     }
 
     public String getMissingRequestsMessage() {
+        synchronized (this) {
+            if (notCalledCount == 0) {
+                // no need to inspect (and format) all messages
+                return null;
+            }
+        }
         List<String> extraResponses = getNotCalled();
         return createUnexpectedMessage("%s response(s) not requested: %s", extraResponses);
     }
@@ -103,41 +193,139 @@ public class MockXmlHttpResponseSequence extends HttpResponse {
         return result;
     }
 
-    public void resetCurrentIndex() {
+    public synchronized void resetCurrentIndex() {
         currentIndex = -1;
     }
 
-    public int getCurrentIndex() {
+    public synchronized int getCurrentIndex() {
         return currentIndex;
     }
 
     @Override
-    public String getResponse() {
+    public synchronized String getResponse() {
         return currentResponse().getResponse();
     }
 
     @Override
-    public int getStatusCode() {
+    public synchronized int getStatusCode() {
         return currentResponse().getStatusCode();
     }
 
     @Override
-    public void setRequest(String aRequest) {
-        // when a new request is received we move to next element in list
-        currentIndex++;
-        currentResponse().setRequest(aRequest);
+    public synchronized void setRequest(String aRequest) {
+        setRequest(MockResponseRule.ANY, MockResponseRule.ANY, null, aRequest);
     }
 
-    protected XmlHttpResponse currentResponse() {
+    /**
+     * Stores request received, selecting the response to serve.
+     * @param method HTTP method of request.
+     * @param path path of request.
+     * @param headers headers of request.
+     * @param aRequest request received.
+     */
+    @Override
+    public synchronized void setRequest(String method, String path, Map<String, List<String>> headers, String aRequest) {
+        if (ruleCount == 0) {
+            // when a new request is received we move to next element in list
+            currentIndex++;
+        } else {
+            IndexedResponse match = findMatch(method, path, headers, aRequest);
+            currentIndex = match == null ? responseList.size() : match.listIndex;
+        }
+        XmlHttpResponse response = currentResponse();
+        IndexedResponse indexedResponse = indexedResponses.get(currentIndex);
+        if (indexedResponse != null) {
+            // rules added later must not select it again
+            indexedResponse.served = true;
+        }
+        boolean wasCalled = StringUtils.isNotEmpty(response.getRequest());
+        response.setRequest(aRequest);
+        boolean called = StringUtils.isNotEmpty(response.getRequest());
+        if (wasCalled != called) {
+            notCalledCount += called ? -1 : 1;
+        }
+    }
+
+    protected synchronized XmlHttpResponse currentResponse() {
         if (currentIndex < 0) {
             throw new IllegalStateException("No 'current' response available. No requests received yet.");
         }
         if (currentIndex == responseList.size()) {
             // we allow capturing of requests, so that we can debug what is received
-            XmlHttpResponse blankResponse = addResponse("");
+            XmlHttpResponse blankResponse = new XmlHttpResponse();
+            blankResponse.setResponse("");
             // not found
             blankResponse.setStatusCode(HttpStatus.SC_NOT_FOUND);
+            emptyResponseCount++;
+            notCalledCount++;
+            indexedResponses.add(null);
+            responseList.add(blankResponse);
+        }
+        return responseList.get(currentIndex);
+    }
+
+    /**
+     * Finds first (i.e. lowest index in response list) unserved response whose rule matches request.
+     * Candidates are looked up by method, path and the request's value for each condition used by rules,
+     * so only their other conditions need to be evaluated.
+     */
+    protected IndexedResponse findMatch(String method, String path, Map<String, List<String>> headers, String aRequest) {
+        String upperMethod = method == null ? MockResponseRule.ANY : method.toUpperCase();
+        String aPath = path == null ? MockResponseRule.ANY : path;
+        Set<String> keys = new LinkedHashSet<String>(4);
+        keys.add(MockResponseRule.createIndexKey(upperMethod, aPath));
+        keys.add(MockResponseRule.createIndexKey(upperMethod, MockResponseRule.ANY));
+        keys.add(MockResponseRule.createIndexKey(MockResponseRule.ANY, aPath));
+        keys.add(ANY_KEY);
+
+        MockRequest request = new MockRequest(headers, aRequest);
+        IndexedResponse result = null;
+        for (String key : keys) {
+            Set<String> conditions = ruleConditions.get(key);
+            if (conditions != null) {
+                for (String condition : conditions) {
+                    for (String value : request.getValues(condition)) {
+                        IndexedResponse candidate = findMatch(createCandidateKey(key, condition, value), request, result);
+                        if (candidate != null) {
+                            result = candidate;
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private IndexedResponse findMatch(String candidateKey, MockRequest request, IndexedResponse bestSoFar) {
+        List<IndexedResponse> candidates = ruleIndex.get(candidateKey);
+        if (candidates != null) {
+            Iterator<IndexedResponse> iterator = candidates.iterator();
+            while (iterator.hasNext()) {
+                IndexedResponse candidate = iterator.next();
+                if (candidate.served) {
+                    iterator.remove();
+                } else if (bestSoFar != null && candidate.listIndex > bestSoFar.listIndex) {
+                    // candidates are in order added, so none of the others can be better
+                    break;
+                } else if (candidate.rule == null || candidate.rule.matches(request)) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Response in index.
+     */
+    protected static class IndexedResponse {
+        private final MockResponseRule rule;
+        private final int listIndex;
+        private boolean served;
+
+        IndexedResponse(MockResponseRule aRule, int aListIndex) {
+            rule = aRule;
+            listIndex = aListIndex;
         }
-        return getResponseList().get(currentIndex);
     }
 }
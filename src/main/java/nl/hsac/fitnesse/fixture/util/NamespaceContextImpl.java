@@ -12,6 +12,7 @@ import java.util.Map;
  */
 public class NamespaceContextImpl implements NamespaceContext {
     private final Map<String, String> namespaces = new HashMap<String, String>();
+    private volatile int modificationCount;
 
     /**
      * Adds registration for prefix.
@@ -23,6 +24,7 @@ public class NamespaceContextImpl implements NamespaceContext {
         if (namespaces.containsKey(prefix)) {
             if (uri == null) {
                 namespaces.remove(prefix);
+                modificationCount++;
             } else {
                 String currentUri = namespaces.get(prefix);
                 if (!currentUri.equals(uri)) {
@@ -33,9 +35,17 @@ public class NamespaceContextImpl implements NamespaceContext {
             }
         } else {
             namespaces.put(prefix, uri);
+            modificationCount++;
         }
     }
 
+    /**
+     * @return number of times the registrations were changed (allowing users to detect changes).
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
     @Override
     public String getNamespaceURI(String aPrefix) {
         return namespaces.get(aPrefix);
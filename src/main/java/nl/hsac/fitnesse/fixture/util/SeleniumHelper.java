@@ -1,6 +1,7 @@
 package nl.hsac.fitnesse.fixture.util;
 
 import nl.hsac.fitnesse.fixture.slim.StopTestException;
+import org.apache.commons.io.FilenameUtils;
 import org.openqa.selenium.*;
 import org.openqa.selenium.ie.InternetExplorerDriver;
 import org.openqa.selenium.internal.Base64Encoder;
@@ -9,12 +10,16 @@ import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.remote.ScreenshotException;
 import org.openqa.selenium.safari.SafariDriver;
 import org.openqa.selenium.support.ui.ExpectedCondition;
-import org.openqa.selenium.support.ui.FluentWait;
 import org.openqa.selenium.support.ui.WebDriverWait;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -24,6 +29,10 @@ import java.util.concurrent.TimeUnit;
 public class SeleniumHelper {
     /** Default time in seconds the wait web driver waits unit throwing TimeOutException. */
     private static final int DEFAULT_TIMEOUT_SECONDS = 10;
+    /** Default time in milliseconds waitUntil() waits after first unsuccessful attempt. */
+    private static final int DEFAULT_POLL_INTERVAL_MILLIS = 10;
+    /** Default maximum time in milliseconds waitUntil() waits between attempts. */
+    private static final int DEFAULT_MAX_POLL_INTERVAL_MILLIS = 500;
 
     private static final String ELEMENT_ON_SCREEN_JS =
             "if (arguments[0].getBoundingClientRect) {\n" +
@@ -35,21 +44,210 @@ public class SeleniumHelper {
                     "  rect.right <= (window.innerWidth || document.documentElement.clientWidth));\n" +
             "} else { return null; }";
 
+    private static final String LABEL_EXACT_XPATH = "//label/descendant-or-self::text()[normalize-space(.)='%s']/ancestor-or-self::label";
+    private static final String LABEL_PARTIAL_XPATH = "//label/descendant-or-self::text()[contains(normalize-space(.), '%s')]/ancestor-or-self::label";
+    private static final String ARIA_LABELLED_BY_EXACT_XPATH = "//*[@aria-labelledby and @aria-labelledby=//*[@id]/descendant-or-self::text()[normalize-space(.) = '%s']/ancestor-or-self::*[@id]/@id]";
+    private static final String ARIA_LABELLED_BY_PARTIAL_XPATH = "//*[@aria-labelledby and @aria-labelledby=//*[@id]/descendant-or-self::text()[contains(normalize-space(.), '%s')]/ancestor-or-self::*[@id]/@id]";
+
+    private static final String LOOKUP_UNSUPPORTED = "unsupported";
+    /**
+     * Defines function 'find(type, expr)' returning first element found using [type, expression] strategy, and
+     * function 'interactable(e)' telling whether an element is displayed and enabled.
+     * For labels without 'for' attribute the first interactable nested field is found, or the first nested field
+     * if none is interactable.
+     */
+    private static final String FIND_FUNCTION_JS =
+            "var interactable = function(e) {\n" +
+            "  if (e.disabled) { return false; }\n" +
+            "  var style = window.getComputedStyle(e);\n" +
+            "  if (style.visibility == 'hidden' || style.display == 'none') { return false; }\n" +
+            "  return e.getClientRects().length > 0;\n" +
+            "};\n" +
+            "var find = function(type, expr) {\n" +
+            "  if (type == 'xpath') {\n" +
+            "    return document.evaluate(expr, document, null, XPathResult.FIRST_ORDERED_NODE_TYPE, null).singleNodeValue;\n" +
+            "  } else if (type == 'css') {\n" +
+            "    return document.querySelector(expr);\n" +
+            "  } else if (type == 'id') {\n" +
+            "    return document.getElementById(expr);\n" +
+            "  } else if (type == 'name') {\n" +
+            "    return document.getElementsByName(expr)[0] || null;\n" +
+            "  } else if (type == 'label') {\n" +
+            "    var label = find('xpath', expr);\n" +
+            "    if (!label) { return null; }\n" +
+            "    var forAttr = label.getAttribute('for');\n" +
+            "    if (forAttr) { return document.getElementById(forAttr); }\n" +
+            "    var fields = label.querySelectorAll('input,select,textarea');\n" +
+            "    for (var j = 0; j < fields.length; j++) {\n" +
+            "      if (interactable(fields[j])) { return fields[j]; }\n" +
+            "    }\n" +
+            "    return fields[0] || null;\n" +
+            "  }\n" +
+            "  return null;\n" +
+            "};\n";
+    /**
+     * Start of asynchronous script waiting (in the browser) until a condition holds. The condition is
+     * re-evaluated (at most once per animation frame) whenever the DOM is modified, and periodically to catch
+     * changes not visible in the DOM (e.g. style sheets loaded).
+     * Arguments are: timeout in milliseconds, arguments for the condition (available as 'args').
+     * Calls back with true when condition holds, false when timeout passed, null if condition could not be evaluated.
+     */
+    private static final String WAIT_IN_BROWSER_JS_START =
+            "var timeout = arguments[0];\n" +
+            "var args = Array.prototype.slice.call(arguments, 1, arguments.length - 1);\n" +
+            FIND_FUNCTION_JS +
+            "var visible = function(e) {\n" +
+            "  if (!e || e.nodeType != 1) { return false; }\n" +
+            "  var style = window.getComputedStyle(e);\n" +
+            "  return style.visibility != 'hidden' && style.display != 'none' && e.getClientRects().length > 0;\n" +
+            "};\n" +
+            "var check = function() {\n";
+    private static final String WAIT_IN_BROWSER_JS_END =
+            "\n};\n" +
+            "var end = new Date().getTime() + timeout;\n" +
+            "var done = false, scheduled = false, observer = null, timer = null;\n" +
+            "var finish = function(result) {\n" +
+            "  if (!done) {\n" +
+            "    done = true;\n" +
+            "    if (observer) { observer.disconnect(); }\n" +
+            "    clearTimeout(timer);\n" +
+            "    callback(result);\n" +
+            "  }\n" +
+            "};\n" +
+            "var evaluate = function() {\n" +
+            "  if (done) { return; }\n" +
+            "  try {\n" +
+            "    if (check()) { finish(true); }\n" +
+            "  } catch (e) {\n" +
+            "    finish(null);\n" +
+            "  }\n" +
+            "};\n" +
+            "var schedule = function() {\n" +
+            "  if (!scheduled && !done) {\n" +
+            "    scheduled = true;\n" +
+            "    var frame = window.requestAnimationFrame || function(f) { setTimeout(f, 16); };\n" +
+            "    frame(function() { scheduled = false; evaluate(); });\n" +
+            "  }\n" +
+            "};\n" +
+            "var tick = function() {\n" +
+            "  evaluate();\n" +
+            "  if (!done) {\n" +
+            "    var remaining = end - new Date().getTime();\n" +
+            "    if (remaining <= 0) { finish(false); } else { timer = setTimeout(tick, Math.min(250, remaining)); }\n" +
+            "  }\n" +
+            "};\n" +
+            "if (!window.getComputedStyle || !document.evaluate) { callback(null); return; }\n" +
+            "if (window.MutationObserver) {\n" +
+            "  observer = new MutationObserver(schedule);\n" +
+            "  observer.observe(document, {childList: true, subtree: true, attributes: true, characterData: true});\n" +
+            "}\n" +
+            "tick();";
+    /** Condition (for waitInBrowser()) holding when an element found using one of the strategies in args[0] is visible. */
+    private static final String VISIBLE_CONDITION_JS =
+            "var strategies = args[0];\n" +
+            "for (var i = 0; i < strategies.length; i++) {\n" +
+            "  if (visible(find(strategies[i][0], strategies[i][1]))) { return true; }\n" +
+            "}\n" +
+            "return false;";
+    /**
+     * Condition (for waitInBrowser()) holding when an element with a class (args[0] == 'class') or tag name
+     * (args[0] == 'tag') args[1] has text or value args[2]. Whitespace and case are ignored, so the condition
+     * holds whenever WebDriver would find the text, but possibly also in some other cases.
+     */
+    private static final String ELEMENT_WITH_TEXT_CONDITION_JS =
+            "var normalize = function(t) { return t == null ? '' : ('' + t).replace(/\\s+/g, '').toLowerCase(); };\n" +
+            "var expected = normalize(args[2]);\n" +
+            "var elements = args[0] == 'class' ? document.getElementsByClassName(args[1]) : document.getElementsByTagName(args[1]);\n" +
+            "for (var i = 0; i < elements.length; i++) {\n" +
+            "  var e = elements[i];\n" +
+            "  if (normalize(e.innerText || e.textContent) == expected || normalize(e.value) == expected) { return true; }\n" +
+            "}\n" +
+            "return false;";
+    /**
+     * Evaluates list of [type, expression] strategies and returns first interactable element found,
+     * or first element found if none is interactable. The previously found element is returned directly if
+     * the DOM was not modified since it was found.
+     * Result is [element, DOM generation (null if not tracked), whether element is interactable].
+     */
+    private static final String FIND_ELEMENT_JS =
+            "if (!document.evaluate || !document.querySelector || !window.getComputedStyle) { return '" + LOOKUP_UNSUPPORTED + "'; }\n" +
+            "var strategies = arguments[0];\n" +
+            FIND_FUNCTION_JS +
+            "var generation = null;\n" +
+            "if (window.MutationObserver) {\n" +
+            "  if (!window.hsacDomGeneration) {\n" +
+            "    window.hsacDomGeneration = {token: new Date().getTime() + '-' + Math.random(), count: 0};\n" +
+            "    new MutationObserver(function() { window.hsacDomGeneration.count++; })\n" +
+            "      .observe(document, {childList: true, subtree: true, attributes: true, characterData: true});\n" +
+            "  }\n" +
+            "  generation = window.hsacDomGeneration.token + ':' + window.hsacDomGeneration.count;\n" +
+            "}\n" +
+            "var cached = arguments[1];\n" +
+            "if (cached && generation && generation == arguments[2]\n" +
+            "    && document.documentElement.contains(cached) && interactable(cached)) {\n" +
+            "  return [cached, generation, true];\n" +
+            "}\n" +
+            "var firstFound = null;\n" +
+            "for (var i = 0; i < strategies.length; i++) {\n" +
+            "  var e = find(strategies[i][0], strategies[i][1]);\n" +
+            "  if (e && e.nodeType == 1) {\n" +
+            "    if (interactable(e)) { return [e, generation, true]; }\n" +
+            "    if (!firstFound) { firstFound = e; }\n" +
+            "  }\n" +
+            "}\n" +
+            "return [firstFound, generation, false];";
+
     private DriverFactory factory;
     private WebDriver webDriver;
+    private WebDriverPool driverPool;
+    private String driverPoolKey;
+    private BackgroundFileWriter fileWriter = new BackgroundFileWriter();
+    private String screenshotFormat = ImageEncoder.PNG;
+    private int screenshotQuality = 80;
+    private final Map<String, String> thumbnails = new LinkedHashMap<String, String>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            // thumbnails are only requested right after their screenshot is taken
+            return size() > 100;
+        }
+    };
     private WebDriverWait webDriverWait;
     private boolean shutdownHookEnabled = false;
     private int defaultTimeoutSeconds = DEFAULT_TIMEOUT_SECONDS;
+    private int defaultPollIntervalMillis = DEFAULT_POLL_INTERVAL_MILLIS;
+    private int defaultMaxPollIntervalMillis = DEFAULT_MAX_POLL_INTERVAL_MILLIS;
+    private int lastWaitPollCount;
+    private boolean javascriptLookup = true;
+    private boolean browserSideWaits = true;
+    private boolean cacheElementLookups = true;
+    private final Map<String, WebElement> elementCache = new HashMap<String, WebElement>();
+    private String elementCacheGeneration;
 
     /**
      * Sets up webDriver to be used.
      * @param aWebDriver web driver to use.
      */
     public void setWebDriver(WebDriver aWebDriver) {
+        setWebDriver(aWebDriver, null);
+    }
+
+    /**
+     * Sets up webDriver to be used.
+     * @param aWebDriver web driver to use.
+     * @param poolKey key to return driver to driver pool with when it is no longer used,
+     *                null if driver should not be pooled.
+     */
+    public void setWebDriver(WebDriver aWebDriver, String poolKey) {
         if (webDriver != null && !webDriver.equals(aWebDriver)) {
-            webDriver.quit();
+            if (driverPool != null && driverPoolKey != null) {
+                driverPool.release(driverPoolKey, webDriver);
+            } else {
+                webDriver.quit();
+            }
         }
         webDriver = aWebDriver;
+        driverPoolKey = poolKey;
+        clearElementCache();
 
         if (webDriver == null) {
             webDriverWait = null;
@@ -61,6 +259,9 @@ public class SeleniumHelper {
             Runtime.getRuntime().addShutdownHook(new Thread() {
                 public void run() {
                     close();
+                    if (driverPool != null) {
+                        driverPool.quitAll();
+                    }
                 }
             });
             shutdownHookEnabled = true;
@@ -100,82 +301,94 @@ public class SeleniumHelper {
         if (by != null) {
             return findElement(by);
         } else {
-            WebElement element = findElement(By.linkText(place));
-            WebElement firstFound = element;
-            if (!isInteractable(element)) {
-                element = getElementExact(place);
-                if (firstFound == null) {
-                    firstFound = element;
-                }
+            return findElementByPlace(place, true);
+        }
+    }
+
+    /**
+     * Finds element to click, by searching in multiple locations. Each location is searched using a separate
+     * call to the browser.
+     * @param place identifier for element.
+     * @return first interactable element found,
+     *          first element found if no interactable element could be found,
+     *          null if none could be found.
+     */
+    protected WebElement getElementToClickPerStrategy(String place) {
+        WebElement element = findElement(By.linkText(place));
+        WebElement firstFound = element;
+        if (!isInteractable(element)) {
+            element = getElementExact(place);
+            if (firstFound == null) {
+                firstFound = element;
             }
-            if (!isInteractable(element)) {
-                element = findElement(By.partialLinkText(place));
-                if (firstFound == null) {
-                    firstFound = element;
-                }
+        }
+        if (!isInteractable(element)) {
+            element = findElement(By.partialLinkText(place));
+            if (firstFound == null) {
+                firstFound = element;
             }
-            if (!isInteractable(element)) {
-                element = getElementPartial(place);
-                if (firstFound == null) {
-                    firstFound = element;
-                }
+        }
+        if (!isInteractable(element)) {
+            element = getElementPartial(place);
+            if (firstFound == null) {
+                firstFound = element;
             }
-            if (!isInteractable(element)) {
-                // find element with specified text and 'onclick' attribute
-                element = findByXPath("//*[@onclick and normalize-space(text())='%s']", place);
-                if (firstFound == null) {
-                    firstFound = element;
-                }
+        }
+        if (!isInteractable(element)) {
+            // find element with specified text and 'onclick' attribute
+            element = findByXPath("//*[@onclick and normalize-space(text())='%s']", place);
+            if (firstFound == null) {
+                firstFound = element;
             }
-            if (!isInteractable(element)) {
-                element = findByXPath("//*[@onclick and contains(normalize-space(text()),'%s')]", place);
-                if (firstFound == null) {
-                    firstFound = element;
-                }
+        }
+        if (!isInteractable(element)) {
+            element = findByXPath("//*[@onclick and contains(normalize-space(text()),'%s')]", place);
+            if (firstFound == null) {
+                firstFound = element;
             }
-            if (!isInteractable(element)) {
-                // find element with child with specified text and 'onclick' attribute
-                element = findByXPath("//*[@onclick and normalize-space(descendant::text())='%s']", place);
-                if (firstFound == null) {
-                    firstFound = element;
-                }
+        }
+        if (!isInteractable(element)) {
+            // find element with child with specified text and 'onclick' attribute
+            element = findByXPath("//*[@onclick and normalize-space(descendant::text())='%s']", place);
+            if (firstFound == null) {
+                firstFound = element;
             }
-            if (!isInteractable(element)) {
-                element = findByXPath("//*[@onclick and contains(normalize-space(descendant::text()),'%s')]", place);
-                if (firstFound == null) {
-                    firstFound = element;
-                }
+        }
+        if (!isInteractable(element)) {
+            element = findByXPath("//*[@onclick and contains(normalize-space(descendant::text()),'%s')]", place);
+            if (firstFound == null) {
+                firstFound = element;
             }
-            if (!isInteractable(element)) {
-                // find element with specified text
-                element = findByXPath("//*[normalize-space(text())='%s']", place);
-                if (firstFound == null) {
-                    firstFound = element;
-                }
+        }
+        if (!isInteractable(element)) {
+            // find element with specified text
+            element = findByXPath("//*[normalize-space(text())='%s']", place);
+            if (firstFound == null) {
+                firstFound = element;
             }
-            if (!isInteractable(element)) {
-                element = findByXPath("//*[contains(normalize-space(text()),'%s')]", place);
-                if (firstFound == null) {
-                    firstFound = element;
-                }
+        }
+        if (!isInteractable(element)) {
+            element = findByXPath("//*[contains(normalize-space(text()),'%s')]", place);
+            if (firstFound == null) {
+                firstFound = element;
             }
-            if (!isInteractable(element)) {
-                // find element with child with specified text
-                element = findByXPath("//*[normalize-space(descendant::text())='%s']", place);
-                if (firstFound == null) {
-                    firstFound = element;
-                }
+        }
+        if (!isInteractable(element)) {
+            // find element with child with specified text
+            element = findByXPath("//*[normalize-space(descendant::text())='%s']", place);
+            if (firstFound == null) {
+                firstFound = element;
             }
-            if (!isInteractable(element)) {
-                element = findByXPath("//*[contains(normalize-space(descendant::text()),'%s')]", place);
-                if (firstFound == null) {
-                    firstFound = element;
-                }
+        }
+        if (!isInteractable(element)) {
+            element = findByXPath("//*[contains(normalize-space(descendant::text()),'%s')]", place);
+            if (firstFound == null) {
+                firstFound = element;
             }
-            return isInteractable(element)
-                    ? element
-                    : firstFound;
         }
+        return isInteractable(element)
+                ? element
+                : firstFound;
     }
 
     /**
@@ -190,19 +403,236 @@ public class SeleniumHelper {
         if (by != null) {
             return findElement(by);
         } else {
-            WebElement element = getElementExact(place);
-            // first element found, even if it is not (yet) interactable.
-            WebElement firstElement = element;
-            if (!isInteractable(element)) {
-                element = getElementPartial(place);
-                if (firstElement == null) {
-                    firstElement = element;
+            return findElementByPlace(place, false);
+        }
+    }
+
+    /**
+     * Finds element by searching in multiple locations, using a single call to the browser if possible.
+     * Elements found before are reused as long as the page's DOM was not modified (or, when the DOM can't be
+     * tracked, as long as the element is not stale).
+     * @param place identifier for element.
+     * @param toClick true to find element to click, false to find element to retrieve content from or enter content in.
+     * @return first interactable element found,
+     *          first element found if no interactable element could be found,
+     *          null if none could be found.
+     */
+    protected WebElement findElementByPlace(String place, boolean toClick) {
+        String key = (toClick ? "click:" : "element:") + place;
+        List<List<String>> strategies = toClick ? getClickStrategies(place) : getElementStrategies(place);
+        if (strategies != null) {
+            try {
+                return findElementUsingJavascript(key, strategies);
+            } catch (UnsupportedOperationException e) {
+                // browser can not search in single call, use one call per strategy
+            } catch (WebDriverException e) {
+                // search failed in browser, use one call per strategy
+            }
+        }
+        WebElement element = getCachedElement(key);
+        if (element == null) {
+            element = toClick ? getElementToClickPerStrategy(place) : getElementPerStrategy(place);
+            if (cacheElementLookups && isInteractable(element)) {
+                elementCache.put(key, element);
+            }
+        }
+        return element;
+    }
+
+    /**
+     * Finds element to retrieve content from or enter content in, by searching in multiple locations.
+     * Each location is searched using a separate call to the browser.
+     * @param place identifier for element.
+     * @return first interactable element found,
+     *          first element found if no interactable element could be found,
+     *          null if none could be found.
+     */
+    protected WebElement getElementPerStrategy(String place) {
+        WebElement element = getElementExact(place);
+        // first element found, even if it is not (yet) interactable.
+        WebElement firstElement = element;
+        if (!isInteractable(element)) {
+            element = getElementPartial(place);
+            if (firstElement == null) {
+                firstElement = element;
+            }
+        }
+        return isInteractable(element)
+                ? element
+                : firstElement;
+    }
+
+    /**
+     * @return whether elements are searched in all locations using a single Javascript call.
+     */
+    public boolean isJavascriptLookup() {
+        return javascriptLookup;
+    }
+
+    /**
+     * @param useJavascript true if elements should be searched in all locations using a single Javascript call,
+     *                      false to make a separate call to the browser for each location.
+     */
+    public void setJavascriptLookup(boolean useJavascript) {
+        javascriptLookup = useJavascript;
+    }
+
+    /**
+     * @return whether elements found are reused (until the page changes).
+     */
+    public boolean isCacheElementLookups() {
+        return cacheElementLookups;
+    }
+
+    /**
+     * @param cache true if elements found should be reused until the page changes.
+     */
+    public void setCacheElementLookups(boolean cache) {
+        cacheElementLookups = cache;
+        clearElementCache();
+    }
+
+    /**
+     * Forgets all elements found before.
+     */
+    public void clearElementCache() {
+        elementCache.clear();
+        elementCacheGeneration = null;
+    }
+
+    /**
+     * Evaluates location strategies in the browser using a single call.
+     * @param key key to cache element found by.
+     * @param strategies list of [type, expression] pairs, in order of priority.
+     * @return first interactable element found,
+     *          first element found if no interactable element could be found,
+     *          null if none could be found.
+     * @throws UnsupportedOperationException if browser does not support the search.
+     */
+    protected WebElement findElementUsingJavascript(String key, List<List<String>> strategies) {
+        WebElement cached = cacheElementLookups ? elementCache.get(key) : null;
+        Object result;
+        try {
+            result = executeScript(FIND_ELEMENT_JS, strategies, cached, elementCacheGeneration);
+        } catch (StaleElementReferenceException e) {
+            clearElementCache();
+            result = executeScript(FIND_ELEMENT_JS, strategies, null, null);
+        }
+        if (LOOKUP_UNSUPPORTED.equals(result)) {
+            javascriptLookup = false;
+            throw new UnsupportedOperationException("Browser does not support lookup using Javascript");
+        }
+        List<?> found = (List<?>) result;
+        WebElement element = (WebElement) found.get(0);
+        String generation = (String) found.get(1);
+        if (generation == null || !generation.equals(elementCacheGeneration)) {
+            // page or its DOM changed
+            clearElementCache();
+            elementCacheGeneration = generation;
+        }
+        if (cacheElementLookups && generation != null && Boolean.TRUE.equals(found.get(2))) {
+            elementCache.put(key, element);
+        }
+        return element;
+    }
+
+    /**
+     * Gets previously found element, if it is still usable.
+     * @param key key element was cached by.
+     * @return element, null if it was not found before or is stale.
+     */
+    protected WebElement getCachedElement(String key) {
+        WebElement element = cacheElementLookups ? elementCache.get(key) : null;
+        if (element != null) {
+            try {
+                if (!isInteractable(element)) {
+                    element = null;
                 }
+            } catch (StaleElementReferenceException e) {
+                element = null;
+            }
+            if (element == null) {
+                elementCache.remove(key);
+            }
+        }
+        return element;
+    }
+
+    /**
+     * @param place identifier for element.
+     * @return strategies for getElementToClick(), in order of priority (null if Javascript lookup can't be used).
+     */
+    protected List<List<String>> getClickStrategies(String place) {
+        List<List<String>> result = null;
+        if (javascriptLookup) {
+            try {
+                result = new ArrayList<List<String>>();
+                addStrategy(result, "xpath", "//a[normalize-space(.)='%s']", place);
+                addExactStrategies(result, place);
+                addStrategy(result, "xpath", "//a[contains(normalize-space(.),'%s')]", place);
+                addPartialStrategies(result, place);
+                addStrategy(result, "xpath", "//*[@onclick and normalize-space(text())='%s']", place);
+                addStrategy(result, "xpath", "//*[@onclick and contains(normalize-space(text()),'%s')]", place);
+                addStrategy(result, "xpath", "//*[@onclick and normalize-space(descendant::text())='%s']", place);
+                addStrategy(result, "xpath", "//*[@onclick and contains(normalize-space(descendant::text()),'%s')]", place);
+                addStrategy(result, "xpath", "//*[normalize-space(text())='%s']", place);
+                addStrategy(result, "xpath", "//*[contains(normalize-space(text()),'%s')]", place);
+                addStrategy(result, "xpath", "//*[normalize-space(descendant::text())='%s']", place);
+                addStrategy(result, "xpath", "//*[contains(normalize-space(descendant::text()),'%s')]", place);
+            } catch (RuntimeException e) {
+                // place can not be used in single expression
+                result = null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param place identifier for element.
+     * @return strategies for getElement(), in order of priority (null if Javascript lookup can't be used).
+     */
+    protected List<List<String>> getElementStrategies(String place) {
+        List<List<String>> result = null;
+        if (javascriptLookup) {
+            try {
+                result = new ArrayList<List<String>>();
+                addExactStrategies(result, place);
+                addPartialStrategies(result, place);
+            } catch (RuntimeException e) {
+                // place can not be used in single expression
+                result = null;
             }
-            return isInteractable(element)
-                    ? element
-                    : firstElement;
         }
+        return result;
+    }
+
+    private void addExactStrategies(List<List<String>> strategies, String place) {
+        addStrategy(strategies, "label", indexedXPath(LABEL_EXACT_XPATH, 1), place);
+        addStrategy(strategies, "css", "input[placeholder='%s']", place);
+        addStrategy(strategies, "css", "input[value='%s']:not([type='hidden'])", place);
+        addStrategy(strategies, "xpath", "//button/descendant-or-self::text()[normalize-space(.)='%s']/ancestor-or-self::button", place);
+        addStrategy(strategies, "css", "textarea[placeholder='%s']", place);
+        addStrategy(strategies, "xpath", "//th/descendant-or-self::text()[normalize-space(.)='%s']/ancestor-or-self::th[1]/../td ", place);
+        addStrategy(strategies, "xpath", indexedXPath(ARIA_LABELLED_BY_EXACT_XPATH, 1), place);
+        addStrategy(strategies, "css", "[aria-label='%s']", place);
+        addStrategy(strategies, "css", "[title='%s']", place);
+        strategies.add(Arrays.asList("name", place));
+        strategies.add(Arrays.asList("id", place));
+    }
+
+    private void addPartialStrategies(List<List<String>> strategies, String place) {
+        addStrategy(strategies, "label", indexedXPath(LABEL_PARTIAL_XPATH, 1), place);
+        addStrategy(strategies, "css", "input[placeholder*='%s']", place);
+        addStrategy(strategies, "css", "input[value*='%s']:not([type='hidden'])", place);
+        addStrategy(strategies, "css", "textarea[placeholder*='%s']", place);
+        addStrategy(strategies, "xpath", "//th/descendant-or-self::text()[contains(normalize-space(.), '%s')]/ancestor-or-self::th[1]/../td ", place);
+        addStrategy(strategies, "xpath", indexedXPath(ARIA_LABELLED_BY_PARTIAL_XPATH, 1), place);
+        addStrategy(strategies, "css", "[aria-label*='%s']", place);
+        addStrategy(strategies, "css", "[title*='%s']", place);
+    }
+
+    private void addStrategy(List<List<String>> strategies, String type, String pattern, String place) {
+        strategies.add(Arrays.asList(type, fillPattern(pattern, new String[] {place})));
     }
 
     public By placeToBy(String place) {
@@ -348,9 +778,7 @@ public class SeleniumHelper {
      *          null if none could be found.
      */
     public WebElement getElementByLabelOccurrence(String labelText, int index) {
-        return getElementByLabel(labelText, index,
-                                    "//label/descendant-or-self::text()[normalize-space(.)='%s']/ancestor-or-self::label"
-        );
+        return getElementByLabel(labelText, index, LABEL_EXACT_XPATH);
     }
 
     /**
@@ -376,9 +804,7 @@ public class SeleniumHelper {
      *          null if none could be found.
      */
     public WebElement getElementByPartialLabelOccurrence(String labelText, int index) {
-        return getElementByLabel(labelText, index,
-                "//label/descendant-or-self::text()[contains(normalize-space(.), '%s')]/ancestor-or-self::label"
-        );
+        return getElementByLabel(labelText, index, LABEL_PARTIAL_XPATH);
     }
 
     private String indexedXPath(String xpathBase, int index) {
@@ -402,7 +828,7 @@ public class SeleniumHelper {
 
     public WebElement getElementByAriaLabel(String labelText, int index) {
         // see if there is an element with labelText as text, whose id is referenced by an aria-labelledby attribute
-        String labelledByPattern = indexedXPath("//*[@aria-labelledby and @aria-labelledby=//*[@id]/descendant-or-self::text()[normalize-space(.) = '%s']/ancestor-or-self::*[@id]/@id]", index);
+        String labelledByPattern = indexedXPath(ARIA_LABELLED_BY_EXACT_XPATH, index);
         WebElement element = findByXPath(labelledByPattern, labelText);
         WebElement firstFound = element;
 
@@ -418,7 +844,7 @@ public class SeleniumHelper {
     }
 
     public WebElement getElementByPartialAriaLabel(String labelText, int index) {
-        String labelledByPattern = indexedXPath("//*[@aria-labelledby and @aria-labelledby=//*[@id]/descendant-or-self::text()[contains(normalize-space(.), '%s')]/ancestor-or-self::*[@id]/@id]", index);
+        String labelledByPattern = indexedXPath(ARIA_LABELLED_BY_PARTIAL_XPATH, index);
         WebElement element = findByXPath(labelledByPattern, labelText);
         WebElement firstFound = element;
 
@@ -433,8 +859,26 @@ public class SeleniumHelper {
                 : firstFound;
     }
 
+    /**
+     * Finds field nested in element (e.g. in a label).
+     * @param parent element to search in.
+     * @return first interactable field found,
+     *          first field found if no interactable field could be found,
+     *          null if none could be found.
+     */
     public WebElement getNestedElementForValue(WebElement parent) {
-        return findElement(parent, false, By.xpath(".//input|.//select|.//textarea"));
+        List<WebElement> elements = parent.findElements(By.xpath(".//input|.//select|.//textarea"));
+        WebElement element = null;
+        for (WebElement e : elements) {
+            if (isInteractable(e)) {
+                element = e;
+                break;
+            }
+        }
+        if (element == null && !elements.isEmpty()) {
+            element = elements.get(0);
+        }
+        return element;
     }
 
     /**
@@ -518,6 +962,95 @@ public class SeleniumHelper {
         return result;
     }
 
+    /**
+     * Waits, inside the browser, until a Javascript condition holds. This requires no polling from this side,
+     * and returns as soon as the browser sees the condition holding.
+     * The condition is the body of a function returning true when waiting can stop. It may use 'args' to access
+     * the arguments supplied, 'find(type, expression)' to find an element using a strategy and 'visible(element)'.
+     * @param timeoutMillis maximum time (in milliseconds) to wait.
+     * @param condition body of Javascript function evaluating condition.
+     * @param arguments arguments for condition.
+     * @return true if the condition held, false if it did not before the timeout,
+     *          null if the browser could not wait (e.g. because browser side waits are disabled, the page was
+     *          replaced or the condition could not be evaluated).
+     */
+    public Boolean waitInBrowser(int timeoutMillis, String condition, Object... arguments) {
+        Boolean result = null;
+        if (browserSideWaits) {
+            Object[] parameters = new Object[arguments.length + 1];
+            parameters[0] = timeoutMillis;
+            System.arraycopy(arguments, 0, parameters, 1, arguments.length);
+            String statement = WAIT_IN_BROWSER_JS_START + condition + WAIT_IN_BROWSER_JS_END;
+            try {
+                Object value = waitForJavascriptCallback(statement.replace("%", "%%"), parameters);
+                if (value instanceof Boolean) {
+                    result = (Boolean) value;
+                }
+            } catch (TimeoutException e) {
+                result = Boolean.FALSE;
+            } catch (WebDriverException e) {
+                // page changed while waiting, or browser does not support asynchronous scripts
+                result = null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Waits, inside the browser, until an element that might be the one getElementToClick() finds is visible.
+     * @param timeoutMillis maximum time (in milliseconds) to wait.
+     * @param place identifier for element.
+     * @return true if such an element became visible, false if it did not before the timeout,
+     *          null if the browser could not wait.
+     */
+    public Boolean waitForVisibleInBrowser(int timeoutMillis, String place) {
+        List<List<String>> strategies = getStrategiesForPlace(place);
+        if (strategies == null) {
+            strategies = getClickStrategies(place);
+        }
+        Boolean result = null;
+        if (strategies != null) {
+            result = waitInBrowser(timeoutMillis, VISIBLE_CONDITION_JS, strategies);
+        }
+        return result;
+    }
+
+    /**
+     * Waits, inside the browser, until an element with a class or tag name might have an expected text.
+     * @param timeoutMillis maximum time (in milliseconds) to wait.
+     * @param byClass true if name is a CSS class, false if it is a tag name.
+     * @param name class or tag name of element.
+     * @param expectedText text to wait for.
+     * @return true if such an element was found, false if it was not before the timeout,
+     *          null if the browser could not wait.
+     */
+    public Boolean waitForElementWithTextInBrowser(int timeoutMillis, boolean byClass, String name, String expectedText) {
+        Boolean result = null;
+        if (expectedText != null) {
+            result = waitInBrowser(timeoutMillis, ELEMENT_WITH_TEXT_CONDITION_JS,
+                                    byClass ? "class" : "tag", name, expectedText);
+        }
+        return result;
+    }
+
+    /**
+     * @param place identifier for element, starting with a prefix (e.g. 'xpath=').
+     * @return strategy for the place (null if place has no prefix, or it can't be used from Javascript).
+     */
+    protected List<List<String>> getStrategiesForPlace(String place) {
+        List<List<String>> result = null;
+        String[] prefixes = {"id=", "css=", "name=", "xpath="};
+        for (String prefix : prefixes) {
+            if (place.startsWith(prefix)) {
+                result = new ArrayList<List<String>>();
+                String type = prefix.substring(0, prefix.length() - 1);
+                result.add(Arrays.asList(type, place.substring(prefix.length())));
+                break;
+            }
+        }
+        return result;
+    }
+
     /**
      * Creates By based on CSS selector, supporting placeholder replacement.
      * @param pattern basic CSS selectot, possibly with placeholders.
@@ -745,9 +1278,100 @@ public class SeleniumHelper {
      * @throws TimeoutException when condition did not give a value to return after maxSecondsToWait.
      */
     public <T> T waitUntil(int maxSecondsToWait, ExpectedCondition<T> condition) {
+        return waitUntil(maxSecondsToWait, getDefaultPollIntervalMillis(), getDefaultMaxPollIntervalMillis(), condition);
+    }
+
+    /**
+     * Executes condition until it returns a value other than null or false.
+     * It does not forward StaleElementReferenceExceptions or NotFoundExceptions, but keeps waiting.
+     * The time waited between attempts starts at pollIntervalMillis and is doubled after each
+     * unsuccessful attempt, until maxPollIntervalMillis. The number of attempts made is available
+     * afterwards via getLastWaitPollCount().
+     * @param maxSecondsToWait number of seconds to wait at most.
+     * @param pollIntervalMillis time (in milliseconds) to wait after first unsuccessful attempt.
+     * @param maxPollIntervalMillis maximum time (in milliseconds) to wait between attempts, must be positive.
+     * @param condition condition to check.
+     * @param <T> return type.
+     * @return result of condition (if not null).
+     * @throws TimeoutException when condition did not give a value to return after maxSecondsToWait.
+     * @throws IllegalArgumentException when maxPollIntervalMillis is not positive.
+     */
+    public <T> T waitUntil(int maxSecondsToWait, int pollIntervalMillis, int maxPollIntervalMillis,
+                           ExpectedCondition<T> condition) {
+        return waitUntilMillis(TimeUnit.SECONDS.toMillis(maxSecondsToWait), pollIntervalMillis, maxPollIntervalMillis,
+                                condition);
+    }
+
+    /**
+     * Executes condition until it returns a value other than null or false, like
+     * waitUntil(int, int, int, ExpectedCondition), but with the maximum time to wait in milliseconds.
+     * Condition is always evaluated at least once, even when maxMillisToWait is 0.
+     * @param maxMillisToWait number of milliseconds to wait at most.
+     * @param pollIntervalMillis time (in milliseconds) to wait after first unsuccessful attempt.
+     * @param maxPollIntervalMillis maximum time (in milliseconds) to wait between attempts, must be positive.
+     * @param condition condition to check.
+     * @param <T> return type.
+     * @return result of condition (if not null).
+     * @throws TimeoutException when condition did not give a value to return after maxMillisToWait.
+     * @throws IllegalArgumentException when maxPollIntervalMillis is not positive.
+     */
+    public <T> T waitUntilMillis(long maxMillisToWait, int pollIntervalMillis, int maxPollIntervalMillis,
+                                 ExpectedCondition<T> condition) {
+        checkMaxPollInterval(maxPollIntervalMillis);
         ExpectedCondition<T> cHandlingStale = getConditionIgnoringStaleElement(condition);
-        FluentWait<WebDriver> wait = waitDriver().withTimeout(maxSecondsToWait, TimeUnit.SECONDS);
-        return wait.until(cHandlingStale);
+        long end = System.currentTimeMillis() + maxMillisToWait;
+        long interval = Math.min(Math.max(0, pollIntervalMillis), maxPollIntervalMillis);
+        int polls = 0;
+        try {
+            while (true) {
+                RuntimeException lastException = null;
+                polls++;
+                try {
+                    T value = cHandlingStale.apply(driver());
+                    if (value != null && !Boolean.FALSE.equals(value)) {
+                        return value;
+                    }
+                } catch (NotFoundException e) {
+                    lastException = e;
+                }
+                long remaining = end - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    String message = String.format("Timed out after %s waiting for %s",
+                                                    formatDuration(maxMillisToWait), condition);
+                    throw new TimeoutException(message, lastException);
+                }
+                sleep(Math.min(interval, remaining));
+                interval = Math.min(Math.max(1, interval * 2), maxPollIntervalMillis);
+            }
+        } finally {
+            lastWaitPollCount = polls;
+        }
+    }
+
+    private static String formatDuration(long millis) {
+        return millis % 1000 == 0 ? (millis / 1000) + " seconds" : millis + " ms";
+    }
+
+    private static void checkMaxPollInterval(int maxPollIntervalMillis) {
+        if (maxPollIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Max poll interval must be positive, but was: " + maxPollIntervalMillis);
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebDriverException(e);
+        }
+    }
+
+    /**
+     * @return number of times condition was evaluated by last call to waitUntil().
+     */
+    public int getLastWaitPollCount() {
+        return lastWaitPollCount;
     }
 
     /**
@@ -851,6 +1475,19 @@ public class SeleniumHelper {
      * @return absolute path of file created.
      */
     public String takeScreenshot(String baseName) {
+        return takeScreenshot(baseName, 0);
+    }
+
+    /**
+     * Takes screenshot of current page. Only the image is captured immediately, it is converted to the screenshot
+     * format and written to disk in the background.
+     * @param baseName name for file created (without extension),
+     *                 if a file already exists with the supplied name an
+     *                 '_index' will be added.
+     * @param thumbnailHeight height (in pixels) of thumbnail to create, 0 for no thumbnail.
+     * @return absolute path of file created.
+     */
+    public String takeScreenshot(String baseName, int thumbnailHeight) {
         String result = null;
         WebDriver d = driver();
         if (!(d instanceof TakesScreenshot)) {
@@ -859,7 +1496,7 @@ public class SeleniumHelper {
         if (d instanceof TakesScreenshot) {
             TakesScreenshot ts = (TakesScreenshot) d;
             byte[] png = ts.getScreenshotAs(OutputType.BYTES);
-            result = writeScreenshot(baseName, png);
+            result = writeScreenshot(baseName, png, thumbnailHeight);
         }
         return result;
     }
@@ -890,7 +1527,53 @@ public class SeleniumHelper {
      * @return absolute path of file created.
      */
     public String writeScreenshot(String baseName, byte[] png) {
-        return FileUtil.saveToFile(baseName, "png", png);
+        return writeScreenshot(baseName, png, 0);
+    }
+
+    /**
+     * Saves screenshot (in the screenshot format) in the background.
+     * @param baseName name for file created (without extension),
+     *                 if a file already exists with the supplied name an
+     *                 '_index' will be added.
+     * @param png screenshot as PNG.
+     * @param thumbnailHeight height (in pixels) of thumbnail to create, 0 for no thumbnail.
+     * @return absolute path of file created.
+     */
+    public String writeScreenshot(String baseName, final byte[] png, final int thumbnailHeight) {
+        final ImageEncoder encoder = new ImageEncoder(screenshotFormat, screenshotQuality / 100f);
+        final File file = FileUtil.createNewFile(baseName, encoder.getFormat());
+        final File thumbnail = thumbnailHeight > 0 ? createThumbnailFile(file) : null;
+        fileWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                BackgroundFileWriter.writeFile(file, encoder.encode(png));
+                if (thumbnail != null) {
+                    BackgroundFileWriter.writeFile(thumbnail, encoder.createThumbnail(png, thumbnailHeight));
+                }
+            }
+        });
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * @param screenshotFile absolute path of screenshot.
+     * @return absolute path of screenshot's thumbnail, null if it has none (or it was created too long ago).
+     */
+    public String getThumbnail(String screenshotFile) {
+        synchronized (thumbnails) {
+            return thumbnails.get(screenshotFile);
+        }
+    }
+
+    private File createThumbnailFile(File screenshot) {
+        String name = screenshot.getName();
+        String baseName = new File(screenshot.getParentFile(), FilenameUtils.getBaseName(name) + "_thumb").getPath();
+        // a thumbnail left by an earlier run gets a new name, so it is never mistaken for this screenshot's
+        File result = FileUtil.createNewFile(baseName, FilenameUtils.getExtension(name));
+        synchronized (thumbnails) {
+            thumbnails.put(screenshot.getAbsolutePath(), result.getAbsolutePath());
+        }
+        return result;
     }
 
     /**
@@ -984,6 +1667,66 @@ public class SeleniumHelper {
         factory = aFactory;
     }
 
+    /**
+     * @param pool pool to return drivers to when they are no longer used.
+     */
+    public void setDriverPool(WebDriverPool pool) {
+        driverPool = pool;
+    }
+
+    /**
+     * @return pool to return drivers to when they are no longer used.
+     */
+    public WebDriverPool getDriverPool() {
+        return driverPool;
+    }
+
+    /**
+     * @param writer writer to save screenshots with.
+     */
+    public void setFileWriter(BackgroundFileWriter writer) {
+        fileWriter = writer;
+    }
+
+    /**
+     * @return writer to save screenshots with.
+     */
+    public BackgroundFileWriter getFileWriter() {
+        return fileWriter;
+    }
+
+    /**
+     * @return format (i.e. extension) to save screenshots in.
+     */
+    public String getScreenshotFormat() {
+        return screenshotFormat;
+    }
+
+    /**
+     * @param format format (i.e. extension) to save screenshots in, e.g. 'png' (default) or 'jpg'.
+     * @throws IllegalArgumentException if images can not be written in format.
+     */
+    public void setScreenshotFormat(String format) {
+        if (!ImageEncoder.isSupported(format)) {
+            throw new IllegalArgumentException("No support for images of type: " + format);
+        }
+        screenshotFormat = format;
+    }
+
+    /**
+     * @return compression quality (percentage) for screenshots in lossy formats.
+     */
+    public int getScreenshotQuality() {
+        return screenshotQuality;
+    }
+
+    /**
+     * @param quality compression quality (percentage) for screenshots in lossy formats (default 80).
+     */
+    public void setScreenshotQuality(int quality) {
+        screenshotQuality = quality;
+    }
+
     /**
      * @param timeoutSeconds default number of seconds to wait before throwing timeout exceptions
      */
@@ -998,6 +1741,51 @@ public class SeleniumHelper {
         return defaultTimeoutSeconds;
     }
 
+    /**
+     * @return true if waitInBrowser() lets the browser wait for conditions.
+     */
+    public boolean isBrowserSideWaits() {
+        return browserSideWaits;
+    }
+
+    /**
+     * @param waitInBrowser true if waitInBrowser() should let the browser wait for conditions (default),
+     *                      false if it should always return null (so all waiting is done by polling from here).
+     */
+    public void setBrowserSideWaits(boolean waitInBrowser) {
+        browserSideWaits = waitInBrowser;
+    }
+
+    /**
+     * @param interval default time (in milliseconds) waitUntil() waits after first unsuccessful attempt.
+     */
+    public void setDefaultPollIntervalMillis(int interval) {
+        defaultPollIntervalMillis = interval;
+    }
+
+    /**
+     * @return default time (in milliseconds) waitUntil() waits after first unsuccessful attempt.
+     */
+    public int getDefaultPollIntervalMillis() {
+        return defaultPollIntervalMillis;
+    }
+
+    /**
+     * @param interval default maximum time (in milliseconds) waitUntil() waits between attempts, must be positive.
+     * @throws IllegalArgumentException when interval is not positive.
+     */
+    public void setDefaultMaxPollIntervalMillis(int interval) {
+        checkMaxPollInterval(interval);
+        defaultMaxPollIntervalMillis = interval;
+    }
+
+    /**
+     * @return default maximum time (in milliseconds) waitUntil() waits between attempts.
+     */
+    public int getDefaultMaxPollIntervalMillis() {
+        return defaultMaxPollIntervalMillis;
+    }
+
     public static interface DriverFactory {
         public void createDriver();
     }
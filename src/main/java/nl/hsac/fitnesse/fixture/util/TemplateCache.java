@@ -0,0 +1,338 @@
+package nl.hsac.fitnesse.fixture.util;
+
+import freemarker.cache.TemplateLoader;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Bounded cache of compiled FreeMarker templates.
+ * Each template is compiled only once, even when requested by multiple threads at the same time. Optionally
+ * templates are recompiled when their source is modified.
+ * Templates are obtained from the Configuration, which caches them as well. When a template is evicted from this
+ * cache it is also removed from the Configuration's cache, so the bound applies to both.
+ */
+public class TemplateCache {
+    private static final String ENCODING = "UTF-8";
+
+    private final Configuration configuration;
+    private final FreeMarkerHelper helper;
+    private final Map<String, Entry> entries;
+    private volatile int maxSize = 500;
+    private volatile long reloadCheckIntervalMillis = -1;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong loadTimeNanos = new AtomicLong();
+
+    /**
+     * Creates new.
+     * @param aConfiguration configuration to obtain templates from.
+     * @param aHelper helper to compile templates with.
+     */
+    public TemplateCache(Configuration aConfiguration, FreeMarkerHelper aHelper) {
+        configuration = aConfiguration;
+        helper = aHelper;
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                boolean remove = size() > maxSize;
+                if (remove) {
+                    evictions.incrementAndGet();
+                    // otherwise FreeMarker's own cache would still hold on to it
+                    removeFromConfiguration(eldest.getKey());
+                }
+                return remove;
+            }
+        };
+    }
+
+    /**
+     * @param name name of template to get.
+     * @return compiled template by that name.
+     */
+    public Template getTemplate(String name) {
+        Entry entry;
+        boolean load = false;
+        synchronized (entries) {
+            entry = entries.get(name);
+            if (entry == null) {
+                entry = new Entry(name);
+                entries.put(name, entry);
+                load = true;
+            }
+        }
+        if (!load && entry.isStale()) {
+            synchronized (entries) {
+                if (entries.get(name) == entry) {
+                    reloads.incrementAndGet();
+                    removeFromConfiguration(name);
+                    entry = new Entry(name);
+                    entries.put(name, entry);
+                    load = true;
+                } else {
+                    entry = entries.get(name);
+                }
+            }
+        }
+        if (load) {
+            misses.incrementAndGet();
+            entry.load();
+        } else {
+            hits.incrementAndGet();
+        }
+        return getLoaded(entry);
+    }
+
+    private Template getLoaded(Entry entry) {
+        try {
+            return entry.task.get();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            synchronized (entries) {
+                // allow next request to retry
+                if (entries.get(entry.name) == entry) {
+                    entries.remove(entry.name);
+                }
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Compiles all templates found below a directory on the class path, so that tests using them later do not
+     * have to wait for them to be compiled.
+     * @param classLoader class loader to find templates with.
+     * @param directory directory (on class path) containing templates.
+     * @return number of templates compiled.
+     */
+    public int precompileTemplates(ClassLoader classLoader, String directory) {
+        int count = 0;
+        for (String name : findTemplateNames(classLoader, directory)) {
+            try {
+                getTemplate(name);
+                count++;
+            } catch (RuntimeException e) {
+                // not a valid template, error will be reported when a test tries to use it
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param classLoader class loader to find templates with.
+     * @param directory directory (on class path) containing templates.
+     * @return names (relative to directory) of all files in directory (and its subdirectories).
+     */
+    protected List<String> findTemplateNames(ClassLoader classLoader, String directory) {
+        List<String> result = new ArrayList<String>();
+        try {
+            Enumeration<URL> urls = classLoader.getResources(directory);
+            while (urls.hasMoreElements()) {
+                URL url = urls.nextElement();
+                if ("file".equals(url.getProtocol())) {
+                    addFileNames(result, FileUtils.toFile(url));
+                } else if ("jar".equals(url.getProtocol())) {
+                    JarURLConnection connection = (JarURLConnection) url.openConnection();
+                    addJarEntryNames(result, connection.getJarFile(), directory + "/");
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to list templates in: " + directory, e);
+        }
+        return result;
+    }
+
+    private void addFileNames(List<String> result, File dir) {
+        String base = dir.toURI().getPath();
+        for (File file : FileUtils.listFiles(dir, null, true)) {
+            result.add(file.toURI().getPath().substring(base.length()));
+        }
+    }
+
+    private void addJarEntryNames(List<String> result, JarFile jar, String prefix) {
+        Enumeration<JarEntry> jarEntries = jar.entries();
+        while (jarEntries.hasMoreElements()) {
+            JarEntry jarEntry = jarEntries.nextElement();
+            String entryName = jarEntry.getName();
+            if (!jarEntry.isDirectory() && entryName.startsWith(prefix)) {
+                result.add(entryName.substring(prefix.length()));
+            }
+        }
+    }
+
+    /**
+     * Removes all templates from cache.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        configuration.clearTemplateCache();
+    }
+
+    /**
+     * @return number of templates in cache.
+     */
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return maximum number of templates kept.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @param size maximum number of templates to keep.
+     */
+    public void setMaxSize(int size) {
+        maxSize = size;
+    }
+
+    /**
+     * @return minimum time (in milliseconds) between checks whether a template's source was modified,
+     *          negative when templates are never reloaded.
+     */
+    public long getReloadCheckIntervalMillis() {
+        return reloadCheckIntervalMillis;
+    }
+
+    /**
+     * @param interval minimum time (in milliseconds) between checks whether a template's source was modified,
+     *                 negative to never reload templates.
+     */
+    public void setReloadCheckIntervalMillis(long interval) {
+        reloadCheckIntervalMillis = interval;
+    }
+
+    /**
+     * @return number of times a compiled template was found in cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of times a template had to be compiled.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of times a template was recompiled because its source was modified.
+     */
+    public long getReloads() {
+        return reloads.get();
+    }
+
+    /**
+     * @return number of templates removed from cache because it was full.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return total time (in milliseconds) spent compiling templates.
+     */
+    public long getTotalLoadTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(loadTimeNanos.get());
+    }
+
+    private long getLastModified(String name) {
+        long result = -1;
+        try {
+            TemplateLoader loader = configuration.getTemplateLoader();
+            Object source = loader.findTemplateSource(name);
+            if (source != null) {
+                try {
+                    result = loader.getLastModified(source);
+                } finally {
+                    loader.closeTemplateSource(source);
+                }
+            }
+        } catch (IOException e) {
+            // unable to determine, assume not modified
+        }
+        return result;
+    }
+
+    private void removeFromConfiguration(String name) {
+        try {
+            configuration.removeTemplateFromCache(name, configuration.getLocale(), ENCODING, true);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private class Entry {
+        private final String name;
+        private final FutureTask<Template> task;
+        private volatile long lastModified = -1;
+        private volatile long lastChecked;
+
+        Entry(String aName) {
+            name = aName;
+            task = new FutureTask<Template>(new Callable<Template>() {
+                @Override
+                public Template call() {
+                    long start = System.nanoTime();
+                    try {
+                        if (reloadCheckIntervalMillis >= 0) {
+                            lastModified = getLastModified(name);
+                            lastChecked = System.currentTimeMillis();
+                        }
+                        return helper.getTemplate(configuration, name);
+                    } finally {
+                        loadTimeNanos.addAndGet(System.nanoTime() - start);
+                    }
+                }
+            });
+        }
+
+        void load() {
+            task.run();
+        }
+
+        boolean isStale() {
+            boolean result = false;
+            long interval = reloadCheckIntervalMillis;
+            long now = System.currentTimeMillis();
+            if (interval >= 0 && task.isDone() && now - lastChecked >= interval) {
+                lastChecked = now;
+                long modified = getLastModified(name);
+                result = modified != -1 && modified != lastModified;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package nl.hsac.fitnesse.fixture.util;
+
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * HTTP entity whose content is generated by applying a FreeMarker template while it is being sent, so that
+ * (large) request bodies never have to be held in memory completely.
+ * The start of the content sent is kept as preview, to be able to report the request.
+ */
+public class TemplateEntity extends AbstractHttpEntity {
+    private final Template template;
+    private final Object model;
+    private final Charset charset;
+    private final int previewLength;
+    private boolean chunked = true;
+    private long contentLength = -2;
+    private volatile String preview;
+    private volatile boolean previewTruncated;
+
+    /**
+     * Creates new.
+     * @param aTemplate template to apply.
+     * @param aModel model to supply to template.
+     * @param aContentType content type to send, its charset (default UTF-8) is used to encode template's output.
+     * @param aPreviewLength maximum number of characters to keep as preview.
+     */
+    public TemplateEntity(Template aTemplate, Object aModel, ContentType aContentType, int aPreviewLength) {
+        template = aTemplate;
+        model = aModel;
+        Charset contentCharset = aContentType.getCharset();
+        charset = contentCharset == null ? Charset.forName("UTF-8") : contentCharset;
+        previewLength = aPreviewLength;
+        setContentType(aContentType.toString());
+        setChunked(true);
+    }
+
+    /**
+     * @param isChunked true to send content without knowing its length in advance, false to determine its
+     *                  length first (by applying template an extra time without storing the result).
+     */
+    @Override
+    public void setChunked(boolean isChunked) {
+        super.setChunked(isChunked);
+        chunked = isChunked;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public long getContentLength() {
+        if (chunked) {
+            return -1;
+        }
+        if (contentLength == -2) {
+            CountingOutputStream counter = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+            try {
+                writeTo(counter);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            contentLength = counter.getByteCount();
+        }
+        return contentLength;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        writeTo(content);
+        return new ByteArrayInputStream(content.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream outstream) throws IOException {
+        PreviewWriter writer = new PreviewWriter(new OutputStreamWriter(outstream, charset));
+        try {
+            template.process(model, writer);
+        } catch (TemplateException e) {
+            throw new RuntimeException(e);
+        }
+        writer.flush();
+        preview = writer.getPreview();
+        previewTruncated = writer.truncated;
+    }
+
+    /**
+     * @return start of content sent (null if nothing was sent yet), ending with '...' if content was longer.
+     */
+    public String getPreview() {
+        return preview;
+    }
+
+    /**
+     * @return true if content sent was longer than preview (i.e. preview is not the complete content).
+     */
+    public boolean isPreviewTruncated() {
+        return previewTruncated;
+    }
+
+    /**
+     * Writer keeping start of all content written.
+     */
+    private class PreviewWriter extends FilterWriter {
+        private final StringBuilder start = new StringBuilder();
+        private boolean truncated = false;
+
+        PreviewWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            super.write(c);
+            if (!truncated) {
+                keep(String.valueOf((char) c));
+            }
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            super.write(cbuf, off, len);
+            if (!truncated) {
+                keep(new String(cbuf, off, len));
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            super.write(str, off, len);
+            if (!truncated) {
+                keep(str.substring(off, off + len));
+            }
+        }
+
+        private void keep(String s) {
+            int room = previewLength - start.length();
+            if (s.length() > room) {
+                truncated = true;
+            }
+            if (room > 0) {
+                start.append(s, 0, Math.min(room, s.length()));
+            }
+        }
+
+        String getPreview() {
+            return truncated ? start + "..." : start.toString();
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package nl.hsac.fitnesse.fixture.util;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of web drivers no longer used by a test, so that tests asking for the same browser can reuse them
+ * instead of starting a new one. Drivers are pooled by a key describing how they were created (e.g. class name,
+ * or remote url and capabilities).
+ * Before a driver is returned to the pool all but one window is closed, and the cookies and storage of the page it
+ * shows are cleared. Browsers only allow clearing those for the current page's domain/origin, so state of other
+ * sites visited by a test may still be present when the driver is reused. Tests that require a completely clean
+ * browser should not use pooling (or a subclass can override reset() to visit and clear each site used).
+ * Drivers are quit (instead of pooled) after they were used a maximum number of times, or when they were not
+ * used for some time. The latter is checked by a background thread, and all pooled drivers are quit when the
+ * JVM shuts down.
+ */
+public class WebDriverPool {
+    private final Map<String, LinkedList<PooledDriver>> idleDrivers = new HashMap<String, LinkedList<PooledDriver>>();
+    private final Map<WebDriver, Integer> useCounts = new IdentityHashMap<WebDriver, Integer>();
+    private volatile boolean enabled = false;
+    private volatile int maxUses = 50;
+    private volatile long idleTimeoutMillis = TimeUnit.MINUTES.toMillis(5);
+    private final AtomicLong reuses = new AtomicLong();
+    private final AtomicLong discards = new AtomicLong();
+    private ScheduledExecutorService reaper;
+    private ScheduledFuture<?> reaperTask;
+
+    /**
+     * Obtains a healthy driver from the pool.
+     * @param key description of driver wanted.
+     * @return driver from pool, or null if pool is disabled or no healthy driver for key was available.
+     */
+    public WebDriver acquire(String key) {
+        WebDriver result = null;
+        if (enabled) {
+            quit(removeExpired());
+            PooledDriver candidate;
+            while (result == null && (candidate = pollIdle(key)) != null) {
+                if (isHealthy(candidate.driver)) {
+                    result = candidate.driver;
+                    reuses.incrementAndGet();
+                } else {
+                    discards.incrementAndGet();
+                    forget(candidate.driver);
+                    quit(candidate.driver);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a driver to the pool (or quits it if it should not be reused).
+     * @param key description of driver, as used to acquire it.
+     * @param driver driver no longer used.
+     */
+    public void release(String key, WebDriver driver) {
+        boolean pooled = false;
+        if (enabled && useCount(driver) < maxUses) {
+            try {
+                reset(driver);
+                pooled = true;
+            } catch (RuntimeException e) {
+                // driver is not healthy, just quit it
+                discards.incrementAndGet();
+            }
+        }
+        if (pooled) {
+            synchronized (idleDrivers) {
+                LinkedList<PooledDriver> drivers = idleDrivers.get(key);
+                if (drivers == null) {
+                    drivers = new LinkedList<PooledDriver>();
+                    idleDrivers.put(key, drivers);
+                }
+                drivers.addFirst(new PooledDriver(driver));
+                scheduleReaper();
+            }
+        } else {
+            forget(driver);
+            quit(driver);
+        }
+        quit(removeExpired());
+    }
+
+    /**
+     * Quits all drivers in pool.
+     */
+    public void quitAll() {
+        List<WebDriver> drivers = new ArrayList<WebDriver>();
+        synchronized (idleDrivers) {
+            for (LinkedList<PooledDriver> pooled : idleDrivers.values()) {
+                for (PooledDriver p : pooled) {
+                    drivers.add(p.driver);
+                    useCounts.remove(p.driver);
+                }
+            }
+            idleDrivers.clear();
+        }
+        quit(drivers);
+    }
+
+    /**
+     * @return number of drivers in pool.
+     */
+    public int getIdleCount() {
+        int result = 0;
+        synchronized (idleDrivers) {
+            for (LinkedList<PooledDriver> pooled : idleDrivers.values()) {
+                result += pooled.size();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes state a test might have left in the browser: closes all but one window, clears the storage
+     * and cookies of the current page and navigates to an empty page.
+     * Cookies and storage of other sites visited are NOT removed, since the browser only allows access to
+     * those of the current page.
+     * @param driver driver to reset.
+     */
+    protected void reset(WebDriver driver) {
+        Set<String> handles = driver.getWindowHandles();
+        if (handles.size() > 1) {
+            Iterator<String> iterator = handles.iterator();
+            String first = iterator.next();
+            while (iterator.hasNext()) {
+                driver.switchTo().window(iterator.next());
+                driver.close();
+            }
+            driver.switchTo().window(first);
+        }
+        if (driver instanceof JavascriptExecutor) {
+            ((JavascriptExecutor) driver).executeScript(
+                    "try { window.localStorage.clear(); window.sessionStorage.clear(); } catch (e) {}");
+        }
+        driver.manage().deleteAllCookies();
+        driver.get("about:blank");
+    }
+
+    /**
+     * @param driver driver to check.
+     * @return whether driver can still be used.
+     */
+    protected boolean isHealthy(WebDriver driver) {
+        try {
+            return driver.getWindowHandle() != null;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private PooledDriver pollIdle(String key) {
+        synchronized (idleDrivers) {
+            LinkedList<PooledDriver> drivers = idleDrivers.get(key);
+            return drivers == null ? null : drivers.poll();
+        }
+    }
+
+    private int useCount(WebDriver driver) {
+        synchronized (idleDrivers) {
+            Integer count = useCounts.get(driver);
+            int result = count == null ? 1 : count + 1;
+            useCounts.put(driver, result);
+            return result;
+        }
+    }
+
+    private void forget(WebDriver driver) {
+        synchronized (idleDrivers) {
+            useCounts.remove(driver);
+        }
+    }
+
+    /**
+     * Ensures expired drivers are quit in the background, even when no drivers are acquired or released.
+     * Must be called while holding lock on idleDrivers.
+     */
+    private void scheduleReaper() {
+        if (reaperTask == null) {
+            if (reaper == null) {
+                reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "WebDriverPool reaper");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+                Runtime.getRuntime().addShutdownHook(new Thread("WebDriverPool shutdown") {
+                    @Override
+                    public void run() {
+                        quitAll();
+                    }
+                });
+            }
+            long interval = Math.max(Math.min(idleTimeoutMillis / 2, TimeUnit.MINUTES.toMillis(1)), 100);
+            reaperTask = reaper.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    quit(removeExpired());
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private List<WebDriver> removeExpired() {
+        List<WebDriver> expired = new ArrayList<WebDriver>();
+        long oldest = System.currentTimeMillis() - idleTimeoutMillis;
+        synchronized (idleDrivers) {
+            for (LinkedList<PooledDriver> drivers : idleDrivers.values()) {
+                Iterator<PooledDriver> iterator = drivers.iterator();
+                while (iterator.hasNext()) {
+                    PooledDriver pooled = iterator.next();
+                    if (pooled.lastUsed < oldest) {
+                        iterator.remove();
+                        useCounts.remove(pooled.driver);
+                        expired.add(pooled.driver);
+                    }
+                }
+            }
+        }
+        return expired;
+    }
+
+    private void quit(List<WebDriver> drivers) {
+        for (WebDriver driver : drivers) {
+            quit(driver);
+        }
+    }
+
+    private void quit(WebDriver driver) {
+        try {
+            driver.quit();
+        } catch (RuntimeException e) {
+            // driver was already unusable
+        }
+    }
+
+    /**
+     * @return whether drivers are pooled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param poolDrivers true if drivers should be pooled, false if released drivers should be quit.
+     */
+    public void setEnabled(boolean poolDrivers) {
+        enabled = poolDrivers;
+    }
+
+    /**
+     * @return number of times a driver may be used before it is quit.
+     */
+    public int getMaxUses() {
+        return maxUses;
+    }
+
+    /**
+     * @param uses number of times a driver may be used before it is quit.
+     */
+    public void setMaxUses(int uses) {
+        maxUses = uses;
+    }
+
+    /**
+     * @return time (in milliseconds) a driver may be in pool before it is quit.
+     */
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * @param timeout time (in milliseconds) a driver may be in pool before it is quit.
+     */
+    public void setIdleTimeoutMillis(long timeout) {
+        synchronized (idleDrivers) {
+            idleTimeoutMillis = timeout;
+            if (reaperTask != null) {
+                // reschedule, to check at interval matching new timeout
+                reaperTask.cancel(false);
+                reaperTask = null;
+                scheduleReaper();
+            }
+        }
+    }
+
+    /**
+     * @return number of times a pooled driver was reused.
+     */
+    public long getReuses() {
+        return reuses.get();
+    }
+
+    /**
+     * @return number of pooled drivers quit because they were no longer healthy.
+     */
+    public long getDiscards() {
+        return discards.get();
+    }
+
+    private static class PooledDriver {
+        private final WebDriver driver;
+        private final long lastUsed = System.currentTimeMillis();
+
+        PooledDriver(WebDriver aDriver) {
+            driver = aDriver;
+        }
+    }
+}
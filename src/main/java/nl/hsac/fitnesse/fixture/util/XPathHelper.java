@@ -1,24 +1,57 @@
 package nl.hsac.fitnesse.fixture.util;
 
 import fit.exception.FitFailureException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
 
 import javax.xml.namespace.NamespaceContext;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.namespace.QName;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
+import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Helper to evaluate XPath expressions.
+ * Compiled expressions are cached (per thread, since XPathExpressions are not thread safe).
  */
 public class XPathHelper {
+    private static final AtomicLong CACHE_HITS = new AtomicLong();
+    private static final AtomicLong CACHE_MISSES = new AtomicLong();
+    private static volatile int maxCacheSize = 500;
+    private static final ThreadLocal<ExpressionCache> CACHE = new ThreadLocal<ExpressionCache>() {
+        @Override
+        protected ExpressionCache initialValue() {
+            return new ExpressionCache();
+        }
+    };
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = new ThreadLocal<DocumentBuilder>() {
+        @Override
+        protected DocumentBuilder initialValue() {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            try {
+                return factory.newDocumentBuilder();
+            } catch (ParserConfigurationException e) {
+                throw new IllegalStateException("Unable to create parser", e);
+            }
+        }
+    };
+
     /**
      * Evaluates xPathExpr against xml, returning single match.
      * @param xml xml document to apply XPath to.
@@ -26,10 +59,19 @@ public class XPathHelper {
      * @return result of evaluation, null if xml is null.
      */
     public static String getXPath(NamespaceContext context, String xml, String xPathExpr) {
-        return (String) evaluateXpath(context, xml, xPathExpr, null);
+        return (String) evaluateXpath(context, toSource(xml), xPathExpr, null);
     }
-    
-    
+
+    /**
+     * Evaluates xPathExpr against (previously parsed) xml, returning single match.
+     * @param document xml document to apply XPath to.
+     * @param xPathExpr XPath expression to evaluate.
+     * @return result of evaluation, null if document is null.
+     */
+    public static String getXPath(NamespaceContext context, Node document, String xPathExpr) {
+        return (String) evaluateXpath(context, document, xPathExpr, null);
+    }
+
     /**
      * Evaluates xPathExpr against xml, returning all matches.
      * @param xml xml document to apply XPath to.
@@ -37,9 +79,23 @@ public class XPathHelper {
      * @return text() of all nodes matching XPath, null if xml is null.
      */
     public static List<String> getAllXPath(NamespaceContext context, String xml, String xPathExpr) {
+        return getAllXPath(context, toSource(xml), xPathExpr);
+    }
+
+    /**
+     * Evaluates xPathExpr against (previously parsed) xml, returning all matches.
+     * @param document xml document to apply XPath to.
+     * @param xPathExpr XPath expression to evaluate.
+     * @return text() of all nodes matching XPath, null if document is null.
+     */
+    public static List<String> getAllXPath(NamespaceContext context, Node document, String xPathExpr) {
+        return getAllXPath(context, (Object) document, xPathExpr);
+    }
+
+    private static List<String> getAllXPath(NamespaceContext context, Object source, String xPathExpr) {
         List<String> result = null;
-        
-        NodeList nodes = (NodeList) evaluateXpath(context, xml, xPathExpr, XPathConstants.NODESET);
+
+        NodeList nodes = (NodeList) evaluateXpath(context, source, xPathExpr, XPathConstants.NODESET);
         if (nodes != null) {
             result = new ArrayList<String>(nodes.getLength());
             for (int i = 0; i < nodes.getLength(); i++) {
@@ -49,28 +105,60 @@ public class XPathHelper {
 
         return result;
     }
-    
-    private static Object evaluateXpath(NamespaceContext context, String xml, String xPathExpr, QName returnType) {
-        Object result = null;
+
+    /**
+     * Parses xml, so multiple expressions can be evaluated without parsing it again for each.
+     * @param xml xml document to parse.
+     * @return parsed (namespace aware) document, null if xml is null.
+     */
+    public static Document parse(String xml) {
+        Document result = null;
+        InputSource source = toSource(xml);
+        if (source != null) {
+            try {
+                DocumentBuilder builder = DOCUMENT_BUILDER.get();
+                builder.reset();
+                result = builder.parse(source);
+            } catch (SAXException e) {
+                throw new FitFailureException("Unable to parse xml: " + e.getMessage());
+            } catch (IOException e) {
+                throw new FitFailureException("Unable to parse xml: " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    private static InputSource toSource(String xml) {
+        InputSource result = null;
         if (xml != null) {
             if (!xml.startsWith("<")) {
                 throw new FitFailureException("Cannot perform XPATH on non-xml: " + xml);
             }
-            XPathFactory xPathfactory = XPathFactory.newInstance();
-            XPath xpath = xPathfactory.newXPath();
-            if (context != null) {
-                xpath.setNamespaceContext(context);
-            }
+            result = new InputSource(new StringReader(xml));
+        }
+        return result;
+    }
+
+    private static Object evaluateXpath(NamespaceContext context, Object source, String xPathExpr, QName returnType) {
+        Object result = null;
+        if (source != null) {
             try {
-                XPathExpression expr = xpath.compile(xPathExpr);
-                InputSource source = new InputSource(new StringReader(xml));
-                
-                if (returnType != null) {
-                	result = expr.evaluate(source, returnType);
+                XPathExpression expr = getExpression(context, xPathExpr);
+
+                if (source instanceof InputSource) {
+                    InputSource inputSource = (InputSource) source;
+                    if (returnType != null) {
+                        result = expr.evaluate(inputSource, returnType);
+                    } else {
+                        result = expr.evaluate(inputSource);
+                    }
                 } else {
-                	result = expr.evaluate(source);
+                    if (returnType != null) {
+                        result = expr.evaluate(source, returnType);
+                    } else {
+                        result = expr.evaluate(source);
+                    }
                 }
-                
             } catch (XPathExpressionException e) {
                 String msg = getMessage(e);
                 throw new FitFailureException("Unable to evaluate xpath: " + xPathExpr + "\n" + msg);
@@ -79,6 +167,58 @@ public class XPathHelper {
         return result;
     }
 
+    private static XPathExpression getExpression(NamespaceContext context, String xPathExpr)
+            throws XPathExpressionException {
+        ExpressionCache cache = CACHE.get();
+        CacheKey key = new CacheKey(context, xPathExpr);
+        XPathExpression expr = cache.get(key);
+        if (expr == null) {
+            CACHE_MISSES.incrementAndGet();
+            expr = cache.compile(context, xPathExpr);
+            cache.put(key, expr);
+        } else {
+            CACHE_HITS.incrementAndGet();
+        }
+        return expr;
+    }
+
+    /**
+     * @return number of times a compiled expression could be reused.
+     */
+    public static long getCacheHits() {
+        return CACHE_HITS.get();
+    }
+
+    /**
+     * @return number of times an expression had to be compiled.
+     */
+    public static long getCacheMisses() {
+        return CACHE_MISSES.get();
+    }
+
+    /**
+     * @return maximum number of compiled expressions cached per thread.
+     */
+    public static int getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    /**
+     * @param size maximum number of compiled expressions cached per thread (0 disables caching).
+     */
+    public static void setMaxCacheSize(int size) {
+        maxCacheSize = size;
+    }
+
+    /**
+     * Removes all compiled expressions cached for current thread, and resets hit/miss counters.
+     */
+    public static void clearCache() {
+        CACHE.remove();
+        CACHE_HITS.set(0);
+        CACHE_MISSES.set(0);
+    }
+
     private static String getMessage(XPathExpressionException e) {
         String msg;
         Throwable t = e;
@@ -88,4 +228,68 @@ public class XPathHelper {
         } while (msg == null && t != null);
         return msg;
     }
+
+    /**
+     * Least recently used cache of compiled expressions, holding the XPath instance used to compile them.
+     */
+    private static class ExpressionCache extends LinkedHashMap<CacheKey, XPathExpression> {
+        private final XPath xpath = XPathFactory.newInstance().newXPath();
+
+        ExpressionCache() {
+            super(16, 0.75f, true);
+        }
+
+        XPathExpression compile(NamespaceContext context, String xPathExpr) throws XPathExpressionException {
+            xpath.reset();
+            if (context != null) {
+                xpath.setNamespaceContext(context);
+            }
+            return xpath.compile(xPathExpr);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, XPathExpression> eldest) {
+            return size() > maxCacheSize;
+        }
+    }
+
+    /**
+     * Key for cache: namespace prefixes are resolved during compilation so the expression is only valid for the
+     * same (unchanged) namespace context.
+     */
+    private static class CacheKey {
+        private final NamespaceContext context;
+        private final int contextVersion;
+        private final String expression;
+
+        CacheKey(NamespaceContext aContext, String anExpression) {
+            context = aContext;
+            if (aContext instanceof NamespaceContextImpl) {
+                contextVersion = ((NamespaceContextImpl) aContext).getModificationCount();
+            } else {
+                contextVersion = 0;
+            }
+            expression = anExpression;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            boolean result = false;
+            if (o instanceof CacheKey) {
+                CacheKey other = (CacheKey) o;
+                result = context == other.context
+                        && contextVersion == other.contextVersion
+                        && expression.equals(other.expression);
+            }
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(context);
+            result = 31 * result + contextVersion;
+            result = 31 * result + expression.hashCode();
+            return result;
+        }
+    }
 }
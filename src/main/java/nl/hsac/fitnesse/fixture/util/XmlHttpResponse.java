@@ -2,6 +2,7 @@ package nl.hsac.fitnesse.fixture.util;
 
 import fit.exception.FitFailureException;
 import nl.hsac.fitnesse.fixture.Environment;
+import org.w3c.dom.Document;
 
 import javax.xml.namespace.NamespaceContext;
 
@@ -18,6 +19,9 @@ public class XmlHttpResponse extends HttpResponse {
     public final static String CONTENT_TYPE_XML_TEXT_UTF8 = "text/xml; charset=UTF-8";
 
     private NamespaceContext namespaceContext;
+    // last xml parsed, so that multiple XPaths on the same content only parse it once
+    private String parsedXml;
+    private Document parsedDocument;
 
     @Override
     public void validResponse() {
@@ -66,7 +70,7 @@ public class XmlHttpResponse extends HttpResponse {
 
     protected String getRawXPath(String soapResponse, String xPathExpr, Object... params) {
         String expr = String.format(xPathExpr, params);
-        String xPathValue = XPathHelper.getXPath(namespaceContext, soapResponse, expr);
+        String xPathValue = XPathHelper.getXPath(namespaceContext, getDocument(soapResponse), expr);
         if ("".equals(xPathValue)) {
             xPathValue = null;
         }
@@ -227,12 +231,32 @@ public class XmlHttpResponse extends HttpResponse {
      */
     public List<String> getAllXPath(String xPathExpr, Object... params) {
         validResponse();
-        return getRawAllXPath(response, xPathExpr, params);
+        return getRawAllXPath(getResponse(), xPathExpr, params);
     }
 
     protected List<String> getRawAllXPath(String soapResponse, String xPathExpr, Object... params) {
         String expr = String.format(xPathExpr, params);
-        return XPathHelper.getAllXPath(namespaceContext, soapResponse, expr);
+        return XPathHelper.getAllXPath(namespaceContext, getDocument(soapResponse), expr);
+    }
+
+    /**
+     * Gets parsed version of xml, only parsing it if it is not the same content as last time this method was called.
+     * @param xml content to parse.
+     * @return parsed document, null if xml is null.
+     */
+    protected Document getDocument(String xml) {
+        if (xml != parsedXml) {
+            parsedDocument = XPathHelper.parse(xml);
+            parsedXml = xml;
+        }
+        return parsedDocument;
+    }
+
+    @Override
+    public void setResponse(String aResponse) {
+        parsedXml = null;
+        parsedDocument = null;
+        super.setResponse(aResponse);
     }
 
     /**
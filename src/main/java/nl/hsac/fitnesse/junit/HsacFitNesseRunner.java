@@ -5,7 +5,15 @@ import fitnesse.FitNesseContext;
 import fitnesse.components.PluginsClassLoader;
 import fitnesse.junit.FitNesseRunner;
 import fitnesse.junit.JUnitRunNotifierResultsListener;
+import fitnesse.junit.JavaFormatter;
 import fitnesse.testrunner.MultipleTestsRunner;
+import fitnesse.testrunner.WikiTestPage;
+import fitnesse.testsystems.Assertion;
+import fitnesse.testsystems.ExceptionResult;
+import fitnesse.testsystems.TestResult;
+import fitnesse.testsystems.TestSummary;
+import fitnesse.testsystems.TestSystem;
+import fitnesse.testsystems.TestSystemListener;
 import fitnesse.wiki.WikiPage;
 import nl.hsac.fitnesse.fixture.Environment;
 import nl.hsac.fitnesse.fixture.slim.web.SeleniumDriverSetup;
@@ -13,13 +21,23 @@ import nl.hsac.fitnesse.fixture.util.FileUtil;
 import nl.hsac.fitnesse.fixture.util.SeleniumHelper;
 import nl.hsac.fitnesse.junit.selenium.*;
 import org.apache.commons.lang3.StringUtils;
+import org.junit.Assert;
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
 import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.model.InitializationError;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * JUnit Runner to run a FitNesse suite or page as JUnit test.
@@ -32,21 +50,45 @@ import java.util.List;
  * by specifying the property 'seleniumGridUrl' and either 'seleniumBrowser' or 'seleniumCapabilities'.
  * The default timeout (in seconds) for Selenium tests may be overridden by specifying the property
  * 'seleniumDefaultTimeout'.
+ * Selenium drivers are reused (instead of started for each suite or page requesting one) when the property
+ * 'seleniumReuseDrivers' is 'true'.
  *
- * The HTML generated for each page is saved in target/fitnesse-results
+ * Pages can be run in parallel by specifying the number of threads to use in the property 'fitnesseParallelThreads'.
+ * The pages are then divided over the threads, and each thread starts its own Slim server (in a separate JVM),
+ * so the pages it runs have their own Environment and Selenium driver. The Selenium properties mentioned above
+ * are passed on to these Slim servers.
+ *
+ * The pages of a suite can be divided over multiple runs (e.g. on different build agents) by specifying
+ * the properties 'shardCount' (number of runs) and 'shardIndex' (0 based, the part of the pages to run).
+ * The results of the shards can be combined using ShardResultsMerger.
+ *
+ * When running in parallel or in shards, pages are divided such that each thread/shard is expected to take about
+ * the same time, and the slowest pages are run first. This is based on the page durations of previous runs
+ * stored in the PageDurationHistory. Shards only use that history when its location is explicitly configured
+ * (property 'fitnessePageDurationHistory'), and all shards must be given the same history file, to ensure each page
+ * is run by exactly one shard. Without a configured history pages are divided over shards based on their names.
+ *
+ * The HTML generated for each page is saved in target/fitnesse-results (or a shard-specific directory below it).
+ * Its index.html is updated as each page completes, so the results so far can be viewed during the run.
  */
 public class HsacFitNesseRunner extends FitNesseRunner {
     private final static String suiteOverrideVariableName = "fitnesseSuiteToRun";
     private final static String SELENIUM_DEFAULT_TIMEOUT_PROP = "seleniumDefaultTimeout";
+    private final static String SELENIUM_REUSE_DRIVERS_PROP = "seleniumReuseDrivers";
+    private final static String PARALLEL_THREADS_PROP = "fitnesseParallelThreads";
+    private final static String SELENIUM_PROP_PREFIX = "selenium";
+    final static String SHARD_INDEX_PROP = "shardIndex";
+    final static String SHARD_COUNT_PROP = "shardCount";
+    final static String FITNESSE_ROOT_PROP = "hsacFitNesseRoot";
+    final static String OUTPUT_DIR = "target/fitnesse-results";
+    private volatile PageResultsCollector pageResultsCollector;
+    private volatile IndexHtmlWriter indexHtmlWriter;
     protected final List<SeleniumDriverFactoryFactory> factoryFactories = new ArrayList<SeleniumDriverFactoryFactory>();
 
     public HsacFitNesseRunner(Class<?> suiteClass) throws InitializationError {
         super(suiteClass);
         try {
-            factoryFactories.add(new SimpleSeleniumGridDriverFactoryFactory());
-            factoryFactories.add(new SeleniumGridDriverFactoryFactory());
-            factoryFactories.add(new LocalSeleniumDriverFactoryFactory());
-            factoryFactories.add(new LocalSeleniumDriverClassFactoryFactory());
+            factoryFactories.addAll(createDefaultFactoryFactories());
 
             // we include images in output so build server will have single
             // directory containing both HTML results and the images created by the tests
@@ -78,7 +120,21 @@ public class HsacFitNesseRunner extends FitNesseRunner {
 
     @Override
     protected String getOutputDir(Class<?> klass) throws InitializationError {
-        return "target/fitnesse-results";
+        String result = OUTPUT_DIR;
+        if (getShardCount() > 1) {
+            result += "/" + ShardResultsMerger.SHARD_DIR_PREFIX + getShardIndex();
+        }
+        return result;
+    }
+
+    @Override
+    protected List<WikiPage> initChildren() {
+        List<WikiPage> pages = super.initChildren();
+        int shardCount = getShardCount();
+        if (shardCount > 1) {
+            pages = partitionPages(pages, getShardPagePartitioner(), shardCount).get(getShardIndex());
+        }
+        return pages;
     }
 
     @Override
@@ -86,6 +142,12 @@ public class HsacFitNesseRunner extends FitNesseRunner {
         return ContextConfigurator.DEFAULT_ROOT;
     }
 
+    @Override
+    protected boolean useDebugMode(Class<?> suiteClass) throws Exception {
+        // pages running in parallel need their own Slim server, only one can run inside this JVM
+        return getParallelThreads() < 2 && super.useDebugMode(suiteClass);
+    }
+
     @Override
     protected FitNesseContext createContext(Class<?> suiteClass) throws Exception {
         // disable maven-classpath-plugin, we expect all jars to be loaded as part of this jUnit run
@@ -97,9 +159,22 @@ public class HsacFitNesseRunner extends FitNesseRunner {
 
     @Override
     protected void runPages(List<WikiPage> pages, RunNotifier notifier) {
-        boolean seleniumConfigOverridden = configureSeleniumIfNeeded();
+        int threads = Math.min(getParallelThreads(), pages.size());
+        // when running in parallel each Slim server configures its own Selenium driver
+        boolean seleniumConfigOverridden = threads < 2 && configureSeleniumIfNeeded();
         try {
-            super.runPages(pages, notifier);
+            indexHtmlWriter = createIndexHtmlWriter();
+        } catch (Exception e) {
+            // index.html only shows progress during the run, the pages' results are still reported
+            // (and their HTML written), so we report the problem but do run the pages
+            notifier.fireTestFailure(new Failure(getDescription(), e));
+        }
+        try {
+            if (threads < 2) {
+                super.runPages(pages, notifier);
+            } else {
+                runPagesInParallel(pages, notifier, threads);
+            }
         } finally {
             if (seleniumConfigOverridden) {
                 try {
@@ -109,30 +184,282 @@ public class HsacFitNesseRunner extends FitNesseRunner {
                 }
             }
 
+            IndexHtmlWriter writer = indexHtmlWriter;
+            indexHtmlWriter = null;
+            if (writer != null && !writer.finish(getRunSummary())) {
+                notifier.fireTestFailure(new Failure(getDescription(),
+                        new RuntimeException("Unable to write: " + writer.getFile().getAbsolutePath(),
+                                                writer.getFailure())));
+            }
+        }
+
+    }
+
+    /**
+     * Creates writer adding each page completed to index.html.
+     * @return started writer.
+     * @throws InitializationError if output directory or suite name could not be determined.
+     */
+    protected IndexHtmlWriter createIndexHtmlWriter() throws InitializationError {
+        Class<?> suiteClass = getTestClass().getJavaClass();
+        String outputDir = getOutputDir(suiteClass);
+        String suiteName = getSuiteName(suiteClass);
+        IndexHtmlWriter result;
+        if (overridesIndexHtmlContent()) {
+            result = new IndexHtmlWriter(outputDir, suiteName) {
+                @Override
+                protected void completeIndex(String runSummary) throws IOException {
+                    // subclass determines content, which requires reading the whole index
+                    replaceContent(HsacFitNesseRunner.this.getIndexHtmlContent(FileUtil.readFile(getFile())));
+                }
+            };
+        } else {
+            result = new IndexHtmlWriter(outputDir, suiteName);
+        }
+        result.start();
+        return result;
+    }
+
+    /**
+     * @return whether a subclass still overrides the deprecated getIndexHtmlContent().
+     */
+    private boolean overridesIndexHtmlContent() {
+        boolean result = false;
+        for (Class<?> c = getClass(); !result && c != HsacFitNesseRunner.class; c = c.getSuperclass()) {
             try {
-                Class<?> suiteClass = getTestClass().getJavaClass();
-                String outputDir = getOutputDir(suiteClass);
-                String suiteName = getSuiteName(suiteClass);
-                String filename = suiteName + ".html";
-                File overviewFile = new File(outputDir, filename);
-                if (overviewFile.exists()) {
-                    String path = overviewFile.getAbsolutePath();
-                    String overviewHtml = FileUtil.streamToString(new FileInputStream(path), path);
-                    if (overviewHtml != null) {
-                        String indexHtml = getIndexHtmlContent(overviewHtml);
-                        FileUtil.writeFile(new File(outputDir, "index.html").getAbsolutePath(), indexHtml);
+                c.getDeclaredMethod("getIndexHtmlContent", String.class);
+                result = true;
+            } catch (NoSuchMethodException e) {
+                // not overridden in this class
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs pages using multiple threads, each running its part of the pages in its own Slim server.
+     * Afterwards the overview of all pages is written, and the suite is checked like it would be when all pages
+     * were run by a single thread.
+     * @param pages pages to run.
+     * @param notifier notifier to report results to.
+     * @param threads number of threads to use.
+     */
+    protected void runPagesInParallel(List<WikiPage> pages, RunNotifier notifier, int threads) {
+        Class<?> suiteClass = getTestClass().getJavaClass();
+        Description suiteDescription = Description.createSuiteDescription(suiteClass);
+        final SynchronizedRunNotifier parallelNotifier = new SynchronizedRunNotifier(notifier, suiteDescription);
+        pageResultsCollector = new PageResultsCollector();
+        Properties originalProperties = configureForkedTestSystems();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> partitionsRun = new ArrayList<Future<?>>();
+            for (final List<WikiPage> partition : partitionPages(pages, threads)) {
+                partitionsRun.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        HsacFitNesseRunner.super.runPages(partition, parallelNotifier);
                     }
+                }));
+            }
+            for (Future<?> partitionRun : partitionsRun) {
+                partitionRun.get();
+            }
+            writeOverview(suiteClass, pageResultsCollector);
+            checkSuiteResult(suiteClass, pageResultsCollector.getTotalSummary());
+        } catch (Throwable e) {
+            notifier.fireTestFailure(new Failure(suiteDescription, e));
+        } finally {
+            executor.shutdownNow();
+            pageResultsCollector = null;
+            restoreProperties(originalProperties);
+        }
+    }
+
+    /**
+     * Divides pages over threads, such that each partition is expected to take about the same time.
+     * The pages of each partition are ordered longest first.
+     * @param pages pages to run.
+     * @param count number of partitions to create.
+     * @return pages to run per thread.
+     */
+    protected List<List<WikiPage>> partitionPages(List<WikiPage> pages, int count) {
+        return partitionPages(pages, getPagePartitioner(), count);
+    }
+
+    private List<List<WikiPage>> partitionPages(List<WikiPage> pages, PagePartitioner partitioner, int count) {
+        List<String> names = new ArrayList<String>(pages.size());
+        Map<String, WikiPage> pagesByName = new HashMap<String, WikiPage>();
+        for (WikiPage page : pages) {
+            String name = getPageName(page);
+            names.add(name);
+            pagesByName.put(name, page);
+        }
+        List<List<WikiPage>> result = new ArrayList<List<WikiPage>>(count);
+        for (List<String> partitionNames : partitioner.partition(names, count)) {
+            List<WikiPage> partition = new ArrayList<WikiPage>(partitionNames.size());
+            for (String name : partitionNames) {
+                partition.add(pagesByName.get(name));
+            }
+            result.add(partition);
+        }
+        return result;
+    }
+
+    /**
+     * @return partitioner to divide pages over threads, using page durations of previous runs.
+     */
+    protected PagePartitioner getPagePartitioner() {
+        return new PagePartitioner(PageDurationHistory.getDefault().load());
+    }
+
+    /**
+     * Each shard divides the pages itself, so all shards must base their partitions on exactly the same input
+     * (otherwise pages are skipped or run twice). Page durations are therefore only used when a history location
+     * is explicitly configured (and supplied to all shards), otherwise pages are divided based on their names.
+     * Results of shards (or previous runs) in this workspace are never used, as shards may change these while
+     * others are still dividing pages.
+     * @return partitioner to divide pages over shards.
+     */
+    protected PagePartitioner getShardPagePartitioner() {
+        PagePartitioner result;
+        if (PageDurationHistory.isConfigured()) {
+            result = new PagePartitioner(PageDurationHistory.getDefault().load());
+        } else {
+            result = PagePartitioner.byName();
+        }
+        return result;
+    }
+
+    /**
+     * @param page page to run.
+     * @return name of page, as used in JUnit reports.
+     */
+    protected String getPageName(WikiPage page) {
+        return page.getPageCrawler().getFullPath().toString();
+    }
+
+    /**
+     * Ensures Slim servers started for test systems run HsacSlimService (so they configure Selenium based on
+     * properties) and receive the Selenium properties, unless the wiki or a property already specifies how to
+     * start them.
+     * @return original values of properties changed.
+     */
+    protected Properties configureForkedTestSystems() {
+        Properties original = new Properties();
+        if (System.getProperty("COMMAND_PATTERN") == null && System.getProperty("TEST_RUNNER") == null) {
+            StringBuilder command = new StringBuilder();
+            appendArgument(command, new File(System.getProperty("java.home"), "bin/java").getPath());
+            for (String name : System.getProperties().stringPropertyNames()) {
+                if (name.startsWith(SELENIUM_PROP_PREFIX)) {
+                    appendArgument(command, "-D" + name + "=" + System.getProperty(name));
                 }
-            } catch (Exception e) {
             }
+            String root = new File(Environment.getInstance().getFitNesseRootDir()).getAbsolutePath();
+            appendArgument(command, "-D" + FITNESSE_ROOT_PROP + "=" + root);
+            appendArgument(command, "-cp");
+            // forked JVM needs FitNesse and HsacSlimService (and their dependencies) besides the wiki's class path
+            appendArgument(command, System.getProperty("java.class.path") + File.pathSeparator + "%p");
+            command.append("%m");
+            setProperty(original, "COMMAND_PATTERN", command.toString());
+            setProperty(original, "TEST_RUNNER", HsacSlimService.class.getName());
+        }
+        return original;
+    }
+
+    private void appendArgument(StringBuilder command, String argument) {
+        if (argument.contains(" ")) {
+            command.append('"').append(argument).append('"');
+        } else {
+            command.append(argument);
+        }
+        command.append(' ');
+    }
+
+    private void setProperty(Properties original, String name, String value) {
+        original.setProperty(name, "");
+        System.setProperty(name, value);
+    }
+
+    private void restoreProperties(Properties original) {
+        for (String name : original.stringPropertyNames()) {
+            System.clearProperty(name);
+        }
+    }
+
+    /**
+     * Writes overview of all pages run (when multiple threads were used each thread wrote an overview of just
+     * its own pages).
+     * @param suiteClass class being run.
+     * @param results results of pages run.
+     * @throws Exception if overview could not be written.
+     */
+    protected void writeOverview(Class<?> suiteClass, PageResultsCollector results) throws Exception {
+        JavaFormatter.FolderResultsRepository repository =
+                new JavaFormatter.FolderResultsRepository(getOutputDir(suiteClass));
+        repository.open(getSuiteName(suiteClass));
+        try {
+            repository.write(new JavaFormatter.TestResultsSummaryTable(
+                    results.getPageNames(), results.getPageSummaries()).toString());
+        } finally {
+            repository.close();
         }
+    }
+
+    /**
+     * Performs the checks on the total results, as FitNesseRunner does after running pages.
+     * @param suiteClass class being run.
+     * @param total total results of all pages.
+     * @throws Exception if total result could not be determined.
+     */
+    protected void checkSuiteResult(Class<?> suiteClass, TestSummary total) throws Exception {
+        Assert.assertEquals("wrong", 0, total.getWrong());
+        Assert.assertEquals("exceptions", 0, total.getExceptions());
+        Assert.assertTrue("at least one test executed in " + getSuiteName(suiteClass) + "\n" + total,
+                            total.getRight() > 0);
+    }
 
+    protected int getParallelThreads() {
+        return getIntProperty(PARALLEL_THREADS_PROP, 1);
+    }
+
+    protected int getShardCount() {
+        return getIntProperty(SHARD_COUNT_PROP, 1);
+    }
+
+    protected int getShardIndex() {
+        int result = getIntProperty(SHARD_INDEX_PROP, 0);
+        if (result < 0 || result >= getShardCount()) {
+            throw new RuntimeException("Bad " + SHARD_INDEX_PROP + " system property: " + result
+                    + " (must be at least 0 and less than " + SHARD_COUNT_PROP + ")");
+        }
+        return result;
+    }
+
+    private int getIntProperty(String name, int defaultValue) {
+        String propValue = System.getProperty(name);
+        int result = defaultValue;
+        if (StringUtils.isNotEmpty(propValue)) {
+            try {
+                result = Integer.parseInt(propValue);
+            } catch (NumberFormatException e) {
+                throw new RuntimeException("Bad " + name + " system property: " + propValue, e);
+            }
+        }
+        return result;
     }
 
     @Override
     protected void addTestSystemListeners(RunNotifier notifier, MultipleTestsRunner testRunner, Class<?> suiteClass) {
         // workaround for https://github.com/unclebob/fitnesse/issues/762
         testRunner.addTestSystemListener(new HsacJUnitRunNotifierResultsListener(notifier, suiteClass));
+        PageResultsCollector collector = pageResultsCollector;
+        if (collector != null) {
+            testRunner.addTestSystemListener(collector);
+        }
+        IndexHtmlWriter writer = indexHtmlWriter;
+        if (writer != null) {
+            testRunner.addTestSystemListener(writer);
+        }
     }
 
     /**
@@ -143,6 +470,7 @@ public class HsacFitNesseRunner extends FitNesseRunner {
      */
     protected boolean configureSeleniumIfNeeded() {
         setSeleniumDefaultTimeOut();
+        setSeleniumDriverReuse();
         try {
             SeleniumHelper.DriverFactory factory = null;
             SeleniumDriverFactoryFactory factoryFactory = getSeleniumDriverFactoryFactory();
@@ -162,6 +490,10 @@ public class HsacFitNesseRunner extends FitNesseRunner {
     }
 
     protected void setSeleniumDefaultTimeOut() {
+        configureSeleniumDefaultTimeOut();
+    }
+
+    static void configureSeleniumDefaultTimeOut() {
         String propValue = System.getProperty(SELENIUM_DEFAULT_TIMEOUT_PROP);
         if (StringUtils.isNotEmpty(propValue)) {
             try {
@@ -173,6 +505,29 @@ public class HsacFitNesseRunner extends FitNesseRunner {
         }
     }
 
+    protected void setSeleniumDriverReuse() {
+        configureSeleniumDriverReuse();
+    }
+
+    static void configureSeleniumDriverReuse() {
+        String propValue = System.getProperty(SELENIUM_REUSE_DRIVERS_PROP);
+        if (StringUtils.isNotEmpty(propValue)) {
+            Environment.getInstance().getWebDriverPool().setEnabled(Boolean.parseBoolean(propValue));
+        }
+    }
+
+    /**
+     * @return factory factories to determine Selenium override with, in order of priority.
+     */
+    static List<SeleniumDriverFactoryFactory> createDefaultFactoryFactories() {
+        List<SeleniumDriverFactoryFactory> result = new ArrayList<SeleniumDriverFactoryFactory>();
+        result.add(new SimpleSeleniumGridDriverFactoryFactory());
+        result.add(new SeleniumGridDriverFactoryFactory());
+        result.add(new LocalSeleniumDriverFactoryFactory());
+        result.add(new LocalSeleniumDriverClassFactoryFactory());
+        return result;
+    }
+
     protected SeleniumDriverFactoryFactory getSeleniumDriverFactoryFactory() {
         SeleniumDriverFactoryFactory result = null;
         for (SeleniumDriverFactoryFactory factory : factoryFactories) {
@@ -189,12 +544,129 @@ public class HsacFitNesseRunner extends FitNesseRunner {
         new SeleniumDriverSetup().stopDriver();
     }
 
+    /**
+     * @return HTML to show in index.html before the overview of pages run, null if none.
+     */
+    protected String getRunSummary() {
+        return SeleniumDriverSetup.getLastRunSummary();
+    }
+
+    /**
+     * Determines final content of index.html, only called (by IndexHtmlWriter once all pages are run) when
+     * a subclass overrides this method. Otherwise the run summary is inserted without reading the whole index.
+     * @param overviewHtml index as written while pages were run.
+     * @return content to store in index.html.
+     * @deprecated override getRunSummary() to change the summary shown, or createIndexHtmlWriter() to change
+     *              the index in another way.
+     */
+    @Deprecated
     protected String getIndexHtmlContent(String overviewHtml) {
         String result = overviewHtml;
-        String runSummary = SeleniumDriverSetup.getLastRunSummary();
+        String runSummary = getRunSummary();
         if (runSummary != null) {
-            result = overviewHtml.replace("<table", runSummary + "<table");
+            result = StringUtils.replaceOnce(overviewHtml, "<table", runSummary + "<table");
         }
         return result;
     }
+
+    /**
+     * Keeps the results of all pages run, by all threads.
+     */
+    protected static class PageResultsCollector implements TestSystemListener<WikiTestPage> {
+        private final List<String> pageNames = new ArrayList<String>();
+        private final Map<String, TestSummary> pageSummaries = new LinkedHashMap<String, TestSummary>();
+        private final TestSummary totalSummary = new TestSummary();
+
+        @Override
+        public synchronized void testComplete(WikiTestPage test, TestSummary testSummary) {
+            String name = test.getFullPath();
+            pageNames.add(name);
+            pageSummaries.put(name, new TestSummary(testSummary));
+            totalSummary.add(testSummary);
+        }
+
+        public synchronized List<String> getPageNames() {
+            return new ArrayList<String>(pageNames);
+        }
+
+        public synchronized Map<String, TestSummary> getPageSummaries() {
+            return new LinkedHashMap<String, TestSummary>(pageSummaries);
+        }
+
+        public synchronized TestSummary getTotalSummary() {
+            return new TestSummary(totalSummary);
+        }
+
+        @Override
+        public void testSystemStarted(TestSystem testSystem) {
+        }
+
+        @Override
+        public void testOutputChunk(String output) {
+        }
+
+        @Override
+        public void testStarted(WikiTestPage test) {
+        }
+
+        @Override
+        public void testSystemStopped(TestSystem testSystem, Throwable cause) {
+        }
+
+        @Override
+        public void testAssertionVerified(Assertion assertion, TestResult testResult) {
+        }
+
+        @Override
+        public void testExceptionOccurred(Assertion assertion, ExceptionResult exceptionResult) {
+        }
+    }
+
+    /**
+     * Notifier allowing multiple threads to report to a single (not thread safe) notifier.
+     * Failed assertions about the suite as a whole are not passed on, since they only concern the part of the
+     * pages run by one thread.
+     */
+    protected static class SynchronizedRunNotifier extends RunNotifier {
+        private final RunNotifier notifier;
+        private final Description suiteDescription;
+
+        public SynchronizedRunNotifier(RunNotifier aNotifier, Description aSuiteDescription) {
+            notifier = aNotifier;
+            suiteDescription = aSuiteDescription;
+        }
+
+        @Override
+        public synchronized void fireTestStarted(Description description) {
+            notifier.fireTestStarted(description);
+        }
+
+        @Override
+        public synchronized void fireTestFailure(Failure failure) {
+            if (!(suiteDescription.equals(failure.getDescription())
+                    && failure.getException() instanceof AssertionError)) {
+                notifier.fireTestFailure(failure);
+            }
+        }
+
+        @Override
+        public synchronized void fireTestAssumptionFailed(Failure failure) {
+            notifier.fireTestAssumptionFailed(failure);
+        }
+
+        @Override
+        public synchronized void fireTestIgnored(Description description) {
+            notifier.fireTestIgnored(description);
+        }
+
+        @Override
+        public synchronized void fireTestFinished(Description description) {
+            notifier.fireTestFinished(description);
+        }
+
+        @Override
+        public void pleaseStop() {
+            notifier.pleaseStop();
+        }
+    }
 }
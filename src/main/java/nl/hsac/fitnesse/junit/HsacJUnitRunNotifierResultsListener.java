@@ -4,6 +4,7 @@ import fitnesse.junit.JUnitRunNotifierResultsListener;
 import fitnesse.testrunner.TestsRunnerListener;
 import fitnesse.testrunner.WikiTestPage;
 import fitnesse.testsystems.*;
+import nl.hsac.fitnesse.fixture.Environment;
 import org.junit.runner.Description;
 import org.junit.runner.notification.Failure;
 import org.junit.runner.notification.RunNotifier;
@@ -49,6 +50,15 @@ public class HsacJUnitRunNotifierResultsListener
 
     @Override
     public void testComplete(WikiTestPage test, TestSummary testSummary) {
+        // ensure all screenshots and page sources of the page are written before it is reported
+        try {
+            Environment.getInstance().getBackgroundFileWriter().flush();
+        } catch (RuntimeException e) {
+            // a screenshot or page source linked from the page is missing
+            if (firstFailure == null) {
+                firstFailure = e;
+            }
+        }
         increaseCompletedTests();
         if (firstFailure != null) {
             notifier.fireTestFailure(new Failure(descriptionFor(test), firstFailure));
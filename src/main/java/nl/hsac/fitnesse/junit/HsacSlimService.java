@@ -0,0 +1,41 @@
+package nl.hsac.fitnesse.junit;
+
+import fitnesse.slim.SlimService;
+import nl.hsac.fitnesse.fixture.Environment;
+import nl.hsac.fitnesse.fixture.slim.web.SeleniumDriverSetup;
+import nl.hsac.fitnesse.fixture.util.SeleniumHelper;
+import nl.hsac.fitnesse.junit.selenium.SeleniumDriverFactoryFactory;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+
+/**
+ * Slim service started (in its own JVM) by HsacFitNesseRunner for each thread, when running pages in parallel.
+ * Before handling requests it configures Environment and Selenium based on the properties supplied by the runner,
+ * like the runner itself does when pages are run inside its JVM.
+ */
+public class HsacSlimService {
+    public static void main(String[] args) throws IOException {
+        String fitNesseRoot = System.getProperty(HsacFitNesseRunner.FITNESSE_ROOT_PROP);
+        if (StringUtils.isNotEmpty(fitNesseRoot)) {
+            Environment.getInstance().setFitNesseRoot(fitNesseRoot);
+        }
+        configureSeleniumIfNeeded();
+        SlimService.main(args);
+    }
+
+    private static void configureSeleniumIfNeeded() {
+        HsacFitNesseRunner.configureSeleniumDefaultTimeOut();
+        HsacFitNesseRunner.configureSeleniumDriverReuse();
+        for (SeleniumDriverFactoryFactory factoryFactory : HsacFitNesseRunner.createDefaultFactoryFactories()) {
+            if (factoryFactory.willOverride()) {
+                SeleniumHelper.DriverFactory factory = factoryFactory.getDriverFactory();
+                if (factory != null) {
+                    SeleniumDriverSetup.lockConfig();
+                    Environment.getInstance().getSeleniumHelper().setDriverFactory(factory);
+                }
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package nl.hsac.fitnesse.junit;
+
+import fitnesse.junit.JavaFormatter;
+import fitnesse.testrunner.WikiTestPage;
+import fitnesse.testsystems.Assertion;
+import fitnesse.testsystems.ExceptionResult;
+import fitnesse.testsystems.TestResult;
+import fitnesse.testsystems.TestSummary;
+import fitnesse.testsystems.TestSystem;
+import fitnesse.testsystems.TestSystemListener;
+import nl.hsac.fitnesse.fixture.util.FileUtil;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+
+/**
+ * Writes index.html (an overview of all pages run) while pages are run, adding a row as each page completes.
+ * So build servers can show the results of the pages run so far during long runs. When the run is finished a
+ * summary of the run can be inserted before the overview's table. It is inserted directly after the page's header,
+ * without reading the (possibly large) index into memory.
+ * The page around the overview is generated by FitNesse's JavaFormatter, so it looks like the overview
+ * JavaFormatter writes itself.
+ */
+public class IndexHtmlWriter implements TestSystemListener<WikiTestPage> {
+    private static final String ENCODING = "UTF-8";
+    private static final String CONTENT_MARKER = "<!--content-->";
+    private final JavaFormatter.TestResultsSummaryTable rowFormatter =
+            new JavaFormatter.TestResultsSummaryTable(Collections.<String>emptyList(),
+                                                        Collections.<String, TestSummary>emptyMap());
+    private final File file;
+    private final String suiteName;
+    private String header;
+    private String footer;
+    private FileOutputStream output;
+    private Exception failure;
+
+    /**
+     * Creates new.
+     * @param outputDir directory to write index.html to.
+     * @param suiteName name of suite run, used as title.
+     */
+    public IndexHtmlWriter(String outputDir, String suiteName) {
+        file = new File(outputDir, "index.html");
+        this.suiteName = suiteName;
+    }
+
+    /**
+     * Writes start of index, with an empty overview table.
+     */
+    public synchronized void start() {
+        try {
+            String[] layout = getPageLayout(suiteName);
+            header = layout[0];
+            footer = layout[1];
+            output = new FileOutputStream(file);
+            write(header + JavaFormatter.TestResultsSummaryTable.SUMMARY_HEADER);
+        } catch (Exception e) {
+            handleException(e);
+        }
+    }
+
+    /**
+     * Lets JavaFormatter write a page (to a temporary directory) to determine the HTML it places around content.
+     * @param title title for page.
+     * @return HTML before and HTML after content.
+     * @throws IOException if page could not be written.
+     */
+    protected String[] getPageLayout(String title) throws IOException {
+        File dir = File.createTempFile("index-layout", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Unable to create directory: " + dir.getAbsolutePath());
+        }
+        try {
+            JavaFormatter.TestResultPage page = new JavaFormatter.TestResultPage(dir.getPath(), title);
+            page.appendResultChunk(CONTENT_MARKER);
+            page.finish();
+            String html = FileUtil.readFile(new File(dir, title + ".html"));
+            int contentStart = html.indexOf(CONTENT_MARKER);
+            return new String[] {html.substring(0, contentStart),
+                                    html.substring(contentStart + CONTENT_MARKER.length())};
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+
+    @Override
+    public synchronized void testComplete(WikiTestPage test, TestSummary testSummary) {
+        if (output != null) {
+            try {
+                write(rowFormatter.summaryRow(test.getFullPath(), testSummary));
+            } catch (IOException e) {
+                handleException(e);
+            }
+        }
+    }
+
+    /**
+     * Completes index.
+     * @param runSummary HTML to place before overview table, null if none.
+     * @return true if index was written successfully (otherwise getFailure() describes the problem).
+     */
+    public synchronized boolean finish(String runSummary) {
+        if (output != null) {
+            try {
+                write(JavaFormatter.TestResultsSummaryTable.SUMMARY_FOOTER + footer);
+                output.close();
+                output = null;
+                completeIndex(runSummary);
+            } catch (Exception e) {
+                handleException(e);
+            }
+        }
+        return failure == null;
+    }
+
+    /**
+     * Makes final changes to index, once all pages are run and the index is closed.
+     * @param runSummary HTML to place before overview table, null if none.
+     * @throws IOException if index could not be changed.
+     */
+    protected void completeIndex(String runSummary) throws IOException {
+        if (runSummary != null) {
+            insertAfterHeader(runSummary);
+        }
+    }
+
+    /**
+     * Inserts content after the header, by copying the index to a new file.
+     * @param content content to insert.
+     * @throws IOException if index could not be rewritten.
+     */
+    protected void insertAfterHeader(String content) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        byte[] headerBytes = header.getBytes(ENCODING);
+        FileChannel in = new FileInputStream(file).getChannel();
+        try {
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(headerBytes);
+                out.write(content.getBytes(ENCODING));
+                FileChannel outChannel = out.getChannel();
+                long size = in.size();
+                long position = headerBytes.length;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, outChannel);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        replaceWith(tmp);
+    }
+
+    /**
+     * Replaces index's content, writing to a new file first so the index is never incomplete.
+     * @param content new content.
+     * @throws IOException if index could not be replaced.
+     */
+    protected void replaceContent(String content) throws IOException {
+        replaceWith(FileUtil.writeFile(file.getPath() + ".tmp", content));
+    }
+
+    private void replaceWith(File newIndex) throws IOException {
+        if (!file.delete() || !newIndex.renameTo(file)) {
+            throw new IOException("Unable to replace: " + file.getAbsolutePath());
+        }
+    }
+
+    private void write(String content) throws IOException {
+        OutputStream os = output;
+        os.write(content.getBytes(ENCODING));
+        os.flush();
+    }
+
+    private void handleException(Exception e) {
+        // index is only a convenience, it should not break the run: we stop writing it and keep the problem
+        // to be reported after the run
+        if (failure == null) {
+            failure = e;
+        }
+        if (output != null) {
+            try {
+                output.close();
+            } catch (IOException ex) {
+                // original exception is more relevant
+            }
+            output = null;
+        }
+    }
+
+    /**
+     * @return first problem encountered writing index, null if none.
+     */
+    public synchronized Exception getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return index file written.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public void testSystemStarted(TestSystem testSystem) {
+    }
+
+    @Override
+    public void testOutputChunk(String output) {
+    }
+
+    @Override
+    public void testStarted(WikiTestPage test) {
+    }
+
+    @Override
+    public void testSystemStopped(TestSystem testSystem, Throwable cause) {
+    }
+
+    @Override
+    public void testAssertionVerified(Assertion assertion, TestResult testResult) {
+    }
+
+    @Override
+    public void testExceptionOccurred(Assertion assertion, ExceptionResult exceptionResult) {
+    }
+}
@@ -1,12 +1,22 @@
 package nl.hsac.fitnesse.junit;
 
 import fitnesse.util.TimeMeasurement;
+import nl.hsac.fitnesse.fixture.util.BackgroundFileWriter;
 import org.apache.commons.lang3.StringEscapeUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.runner.Description;
+import org.junit.runner.Result;
 import org.junit.runner.notification.Failure;
 import org.junit.runner.notification.RunListener;
 
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.*;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * JUnit RunListener to be used during integration test executing FitNesse pages.
@@ -14,41 +24,117 @@ import java.io.*;
  * 1 file per Java class (and we have only 1 class that runs all pages).
  * This allows build servers to report progress during the run.
  * The page names are used as test names, the Java class executing them is ignored.
+ * The files are written on a background thread, so running the next page does not have to wait for them. All
+ * files are written when the run is finished.
+ * When the property 'fitnesseJUnitSuiteReport' is 'true' a single file containing the results of all pages
+ * (TEST-suite.xml) is written as well. When only a shard of the suite is run its name includes the shard's index
+ * (e.g. TEST-suite-shard-1.xml), so ShardResultsMerger can combine the reports of all shards.
+ * At the end of the run the duration of each page is stored in the PageDurationHistory (unless only a shard
+ * of the suite is run, the history is then updated by ShardResultsMerger).
  */
 public class JUnitXMLPerPageListener extends RunListener {
     // default directory for maven-failsafe-plugin
-    private final static String OUTPUT_PATH = "target/failsafe-reports/";
-    private TimeMeasurement timeMeasurement;
+    final static String OUTPUT_PATH = "target/failsafe-reports/";
+    final static String SUITE_REPORT_PROP = "fitnesseJUnitSuiteReport";
+    final static String SUITE_REPORT_NAME = "suite";
+    private static final String ENCODING = "UTF-8";
+    // pages may be run in parallel, so we keep a measurement per page
+    private final Map<String, TimeMeasurement> timeMeasurements = new ConcurrentHashMap<String, TimeMeasurement>();
+    private final Map<String, Double> durations = new ConcurrentHashMap<String, Double>();
+    // a page's failure is reported before it is finished, we write its result once it is finished
+    private final Map<String, Throwable> failures = new ConcurrentHashMap<String, Throwable>();
+    private final BackgroundFileWriter fileWriter = new BackgroundFileWriter();
+    private final boolean writeSuiteReport = Boolean.parseBoolean(System.getProperty(SUITE_REPORT_PROP));
+    private OutputStream suiteReportStream;
+    private XMLStreamWriter suiteReportWriter;
 
     /**
      * Creates new.
      */
     public JUnitXMLPerPageListener() {
         new File(getOutputPath()).mkdirs();
+        // results are small, so we can afford to queue many of them
+        fileWriter.setQueueSize(500);
     }
 
     @Override
     public void testStarted(Description description) throws Exception {
-        timeMeasurement = new TimeMeasurement().start();
+        String testName = getTestName(description);
+        if (testName != null) {
+            timeMeasurements.put(testName, new TimeMeasurement().start());
+        }
         super.testStarted(description);
     }
 
     @Override
     public void testFinished(Description description) throws Exception {
         super.testFinished(description);
-        recordTestResult(description, null, getExecutionTime());
+        String testName = getTestName(description);
+        Throwable exception = testName == null ? null : failures.remove(testName);
+        recordTestResult(description, exception, getExecutionTime(description));
+        if (testName != null) {
+            timeMeasurements.remove(testName);
+        }
     }
 
     @Override
     public void testFailure(Failure failure) throws Exception {
         super.testFailure(failure);
-        recordTestResult(failure.getDescription(), failure.getException(), getExecutionTime());
+        String testName = getTestName(failure.getDescription());
+        if (testName != null) {
+            failures.put(testName, failure.getException());
+        } else {
+            recordTestResult(failure.getDescription(), failure.getException(), getExecutionTime(failure.getDescription()));
+        }
+    }
+
+    @Override
+    public void testRunFinished(Result result) throws Exception {
+        super.testRunFinished(result);
+        // record failures of pages that were never finished
+        for (Map.Entry<String, Throwable> failure : failures.entrySet()) {
+            String testName = failure.getKey();
+            TimeMeasurement timeMeasurement = timeMeasurements.get(testName);
+            double executionTime = timeMeasurement == null ? 0 : timeMeasurement.elapsedSeconds();
+            queueResult(testName, failure.getValue(), executionTime);
+        }
+        failures.clear();
+        try {
+            // throws if a result could not be written
+            fileWriter.flush();
+        } finally {
+            closeSuiteReport();
+            if (!durations.isEmpty() && StringUtils.isEmpty(System.getProperty(HsacFitNesseRunner.SHARD_COUNT_PROP))) {
+                PageDurationHistory.getDefault().update(new HashMap<String, Double>(durations));
+            }
+        }
     }
 
+    /**
+     * @return execution time in seconds of the page being run (0 if not exactly one page is being run).
+     * @deprecated pages may be run in parallel, use getExecutionTime(Description).
+     */
+    @Deprecated
     protected double getExecutionTime() {
         double executionTime = 0;
+        Collection<TimeMeasurement> running = timeMeasurements.values();
+        if (running.size() == 1) {
+            executionTime = running.iterator().next().elapsedSeconds();
+        }
+        return executionTime;
+    }
+
+    /**
+     * @param description JUnit description of test executed
+     * @return execution time in seconds (0 if test was not started).
+     */
+    protected double getExecutionTime(Description description) {
+        double executionTime = 0;
+        String testName = getTestName(description);
+        TimeMeasurement timeMeasurement = testName == null ? null : timeMeasurements.get(testName);
         if (timeMeasurement != null) {
-            timeMeasurement.elapsedSeconds();
+            executionTime = timeMeasurement.elapsedSeconds();
+            durations.put(testName, executionTime);
         }
         return executionTime;
     }
@@ -62,8 +148,31 @@ public class JUnitXMLPerPageListener extends RunListener {
      */
     protected void recordTestResult(Description description, Throwable exception, double executionTime) throws IOException {
         String testName = getTestName(description);
-        String resultXml = generateResultXml(testName, exception, executionTime);
-        writeResult(testName, resultXml);
+        queueResult(testName, exception, executionTime);
+    }
+
+    /**
+     * Queues writing of result of single page (i.e. test) to be performed on the background thread.
+     * @param testName name of test.
+     * @param exception exception from test
+     * @param executionTime execution time in seconds
+     */
+    protected void queueResult(final String testName, final Throwable exception, final double executionTime) {
+        fileWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeResult(testName, generateResultXml(testName, exception, executionTime));
+                    if (writeSuiteReport) {
+                        addToSuiteReport(testName, exception, executionTime);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException("Unable to write result for: " + testName, e);
+                } catch (XMLStreamException e) {
+                    throw new RuntimeException("Unable to add result for: " + testName + " to suite report", e);
+                }
+            }
+        });
     }
 
     /**
@@ -95,6 +204,83 @@ public class JUnitXMLPerPageListener extends RunListener {
                 + testName + "\">" + failureXml + "</testcase>" + "</testsuite>";
     }
 
+    /**
+     * Adds test outcome to the report containing all tests, which is streamed to disk so it does not have
+     * to be kept in memory.
+     * @param testName name of test.
+     * @param exception exception from test
+     * @param executionTime execution time in seconds
+     * @throws IOException if unable to open report.
+     * @throws XMLStreamException if unable to write to report.
+     */
+    protected void addToSuiteReport(String testName, Throwable exception, double executionTime)
+            throws IOException, XMLStreamException {
+        // the background thread may be helped by a test thread, when its queue is full
+        synchronized (fileWriter) {
+            XMLStreamWriter writer = getSuiteReportWriter();
+            String time = String.valueOf(executionTime);
+            boolean failure = exception instanceof AssertionError;
+            writer.writeStartElement("testsuite");
+            writer.writeAttribute("errors", exception != null && !failure ? "1" : "0");
+            writer.writeAttribute("skipped", "0");
+            writer.writeAttribute("tests", "1");
+            writer.writeAttribute("time", time);
+            writer.writeAttribute("failures", failure ? "1" : "0");
+            writer.writeAttribute("name", testName);
+            writer.writeStartElement("testcase");
+            writer.writeAttribute("classname", testName);
+            writer.writeAttribute("time", time);
+            writer.writeAttribute("name", testName);
+            if (exception != null) {
+                writer.writeStartElement("failure");
+                writer.writeAttribute("type", exception.getClass().getName());
+                writer.writeAttribute("message", String.valueOf(exception.getMessage()));
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+            writer.writeEndElement();
+            writer.flush();
+        }
+    }
+
+    private XMLStreamWriter getSuiteReportWriter() throws IOException, XMLStreamException {
+        if (suiteReportWriter == null) {
+            suiteReportStream = new BufferedOutputStream(new FileOutputStream(getXmlFileName(getSuiteReportName())));
+            suiteReportWriter = XMLOutputFactory.newInstance().createXMLStreamWriter(suiteReportStream, ENCODING);
+            suiteReportWriter.writeStartDocument(ENCODING, "1.0");
+            suiteReportWriter.writeStartElement("testsuites");
+        }
+        return suiteReportWriter;
+    }
+
+    /**
+     * @return name for the report containing the results of all pages, includes the shard's index when only a
+     *          shard of the suite is run.
+     */
+    protected String getSuiteReportName() {
+        String result = SUITE_REPORT_NAME;
+        if (StringUtils.isNotEmpty(System.getProperty(HsacFitNesseRunner.SHARD_COUNT_PROP))) {
+            String shardIndex = System.getProperty(HsacFitNesseRunner.SHARD_INDEX_PROP);
+            result += "-" + ShardResultsMerger.SHARD_DIR_PREFIX + StringUtils.defaultIfEmpty(shardIndex, "0");
+        }
+        return result;
+    }
+
+    private void closeSuiteReport() throws IOException, XMLStreamException {
+        synchronized (fileWriter) {
+            if (suiteReportWriter != null) {
+                try {
+                    suiteReportWriter.writeEndDocument();
+                    suiteReportWriter.close();
+                } finally {
+                    suiteReportStream.close();
+                    suiteReportWriter = null;
+                    suiteReportStream = null;
+                }
+            }
+        }
+    }
+
     protected String getMessage(Throwable exception) {
         String errorMessage = exception.getMessage();
         return StringEscapeUtils.escapeXml(errorMessage);
@@ -113,7 +299,7 @@ public class JUnitXMLPerPageListener extends RunListener {
             fw = new BufferedWriter(
                     new OutputStreamWriter(
                         new FileOutputStream(finalPath),
-                        "UTF-8"));
+                        ENCODING));
             fw.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
             fw.write(resultXml);
         } finally {
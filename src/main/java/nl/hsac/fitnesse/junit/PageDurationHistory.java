@@ -0,0 +1,124 @@
+package nl.hsac.fitnesse.junit;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * File storing the duration (in seconds) of each page, the last time it was run.
+ * It is used to divide pages over threads and shards, and to run the slowest pages first.
+ * Its location can be set using the property 'fitnessePageDurationHistory' (default
+ * target/fitnesse-page-durations.properties), so it can be kept between builds.
+ */
+public class PageDurationHistory {
+    private final static String LOCATION_PROP = "fitnessePageDurationHistory";
+    private final static String DEFAULT_LOCATION = "target/fitnesse-page-durations.properties";
+    private final File file;
+
+    /**
+     * @return whether a location was explicitly configured (instead of using the default).
+     */
+    public static boolean isConfigured() {
+        return StringUtils.isNotEmpty(System.getProperty(LOCATION_PROP));
+    }
+
+    /**
+     * @return history at the location configured.
+     */
+    public static PageDurationHistory getDefault() {
+        String location = System.getProperty(LOCATION_PROP);
+        if (StringUtils.isEmpty(location)) {
+            location = DEFAULT_LOCATION;
+        }
+        return new PageDurationHistory(new File(location));
+    }
+
+    /**
+     * Creates new.
+     * @param aFile file to store history in.
+     */
+    public PageDurationHistory(File aFile) {
+        file = aFile;
+    }
+
+    /**
+     * @return duration per page name, empty if no history is present.
+     */
+    public Map<String, Double> load() {
+        Map<String, Double> result = new HashMap<String, Double>();
+        synchronized (PageDurationHistory.class) {
+            if (file.exists()) {
+                Properties properties = new Properties();
+                try {
+                    InputStream is = new FileInputStream(file);
+                    try {
+                        properties.load(is);
+                    } finally {
+                        is.close();
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException("Unable to read page durations from: " + file.getAbsolutePath(), e);
+                }
+                for (String name : properties.stringPropertyNames()) {
+                    try {
+                        result.put(name, Double.valueOf(properties.getProperty(name)));
+                    } catch (NumberFormatException e) {
+                        // no usable duration
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stores durations, keeping the history of pages not included.
+     * @param durations duration per page name.
+     */
+    public void update(Map<String, Double> durations) {
+        synchronized (PageDurationHistory.class) {
+            Map<String, Double> all = load();
+            all.putAll(durations);
+            Properties properties = new Properties();
+            for (Map.Entry<String, Double> entry : all.entrySet()) {
+                properties.setProperty(entry.getKey(), entry.getValue().toString());
+            }
+            File parent = file.getAbsoluteFile().getParentFile();
+            parent.mkdirs();
+            try {
+                // write to temporary file first, so an interrupted run does not leave a partial history
+                File tmp = File.createTempFile(file.getName(), ".tmp", parent);
+                OutputStream os = new FileOutputStream(tmp);
+                try {
+                    properties.store(os, "Page durations (in seconds)");
+                } finally {
+                    os.close();
+                }
+                if (!tmp.renameTo(file)) {
+                    file.delete();
+                    if (!tmp.renameTo(file)) {
+                        tmp.delete();
+                        throw new IOException("Unable to replace: " + file.getAbsolutePath());
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to write page durations to: " + file.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    /**
+     * @return file history is stored in.
+     */
+    public File getFile() {
+        return file;
+    }
+}
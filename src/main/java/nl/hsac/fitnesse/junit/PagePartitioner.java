@@ -0,0 +1,157 @@
+package nl.hsac.fitnesse.junit;
+
+import nl.hsac.fitnesse.fixture.util.FileUtil;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Divides pages over a number of partitions (e.g. threads or shards), such that each partition is expected to
+ * take about the same time. The same pages and durations always give the same partitions.
+ * Pages are assigned, longest first, to the partition with the lowest total expected duration so far.
+ * Within each partition the pages are also ordered longest first, so a long page does not start just before the end
+ * of the run.
+ * Pages whose duration is unknown are expected to take the average duration of the known pages.
+ * A partitioner created by byName() ignores durations and selects the partition of a page based on a hash of its name,
+ * so the partition of a page does not depend on any other input.
+ */
+public class PagePartitioner {
+    private static final Pattern TEST_SUITE_PATTERN =
+            Pattern.compile("<testsuite [^>]*time=\"([^\"]*)\"[^>]*name=\"([^\"]*)\"");
+    private final Map<String, Double> durations;
+    private final boolean byName;
+
+    /**
+     * Creates new.
+     * @param pageDurations expected duration (in seconds) per page name.
+     */
+    public PagePartitioner(Map<String, Double> pageDurations) {
+        this(pageDurations, false);
+    }
+
+    private PagePartitioner(Map<String, Double> pageDurations, boolean partitionByName) {
+        durations = pageDurations;
+        byName = partitionByName;
+    }
+
+    /**
+     * @return partitioner dividing pages based on their names only.
+     */
+    public static PagePartitioner byName() {
+        return new PagePartitioner(Collections.<String, Double>emptyMap(), true);
+    }
+
+    /**
+     * Divides pages.
+     * @param pageNames full names of pages to divide.
+     * @param count number of partitions to create.
+     * @return page names per partition, each ordered longest first.
+     */
+    public List<List<String>> partition(List<String> pageNames, int count) {
+        double defaultDuration = getDefaultDuration(pageNames);
+        double[] totals = new double[count];
+        List<List<String>> result = new ArrayList<List<String>>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new ArrayList<String>());
+        }
+        for (String pageName : order(pageNames)) {
+            int index;
+            if (byName) {
+                // String.hashCode() is the same in every JVM
+                index = (pageName.hashCode() & Integer.MAX_VALUE) % count;
+            } else {
+                index = 0;
+                for (int i = 1; i < count; i++) {
+                    if (totals[i] < totals[index]) {
+                        index = i;
+                    }
+                }
+                totals[index] += getDuration(pageName, defaultDuration);
+            }
+            result.get(index).add(pageName);
+        }
+        return result;
+    }
+
+    /**
+     * Orders pages longest first.
+     * @param pageNames full names of pages.
+     * @return page names ordered by expected duration, pages with equal duration in the order they were supplied.
+     */
+    public List<String> order(List<String> pageNames) {
+        final double defaultDuration = getDefaultDuration(pageNames);
+        List<String> result = new ArrayList<String>(pageNames);
+        // sort is stable, so pages with equal duration keep their order
+        Collections.sort(result, new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                return Double.compare(getDuration(o2, defaultDuration), getDuration(o1, defaultDuration));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @param pageName full name of page.
+     * @return expected duration (in seconds) of page, null if unknown.
+     */
+    public Double getDuration(String pageName) {
+        Double duration = durations.get(pageName);
+        return duration == null || duration <= 0 ? null : duration;
+    }
+
+    private double getDuration(String pageName, double defaultDuration) {
+        Double duration = getDuration(pageName);
+        return duration == null ? defaultDuration : duration;
+    }
+
+    private double getDefaultDuration(List<String> pageNames) {
+        double total = 0;
+        int known = 0;
+        for (String pageName : pageNames) {
+            Double duration = getDuration(pageName);
+            if (duration != null) {
+                total += duration;
+                known++;
+            }
+        }
+        return known == 0 ? 1 : total / known;
+    }
+
+    /**
+     * Reads the page durations recorded by JUnitXMLPerPageListener.
+     * @param reportsDir directory containing result XML per page.
+     * @return duration (in seconds) per page name.
+     */
+    public static Map<String, Double> readDurations(File reportsDir) {
+        Map<String, Double> result = new HashMap<String, Double>();
+        File[] reports = reportsDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith("TEST-") && name.endsWith(".xml");
+            }
+        });
+        if (reports != null) {
+            for (File report : reports) {
+                try {
+                    String xml = FileUtil.readFile(report);
+                    Matcher matcher = TEST_SUITE_PATTERN.matcher(xml);
+                    if (matcher.find()) {
+                        result.put(matcher.group(2), Double.valueOf(matcher.group(1)));
+                    }
+                } catch (IllegalArgumentException e) {
+                    // report removed while reading, or no usable duration: ignore it
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,154 @@
+package nl.hsac.fitnesse.junit;
+
+import fitnesse.junit.JavaFormatter;
+import nl.hsac.fitnesse.fixture.util.FileUtil;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Combines the results written by the shards of a suite run by HsacFitNesseRunner with 'shardCount' set.
+ * Each shard writes its HTML results to its own directory (target/fitnesse-results/shard-&lt;index&gt;), these are
+ * copied to target/fitnesse-results with a single overview (and index.html) listing the pages of all shards.
+ * The JUnit XML reports of shards that ran elsewhere (in other workspaces) can be added to the
+ * failsafe-reports directory by supplying their directories as additional arguments.
+ * Shards that ran elsewhere must also have their HTML results placed in shard-&lt;index&gt; directories
+ * below target/fitnesse-results before merging.
+ * Finally the page durations in the merged reports are stored in the PageDurationHistory, to divide the pages
+ * of the next run.
+ */
+public class ShardResultsMerger {
+    static final String SHARD_DIR_PREFIX = "shard-";
+    private final File resultsDir;
+    private final String suiteName;
+
+    /**
+     * Merges results.
+     * @param args name of suite run, optionally followed by failsafe-reports directories of other shards.
+     * @throws IOException if results could not be merged.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: " + ShardResultsMerger.class.getName()
+                    + " <suiteName> [<failsafe-reports dir of other shard>...]");
+            System.exit(1);
+        }
+        ShardResultsMerger merger = new ShardResultsMerger(new File(HsacFitNesseRunner.OUTPUT_DIR), args[0]);
+        merger.mergeFitNesseResults();
+        File reportsDir = new File(JUnitXMLPerPageListener.OUTPUT_PATH);
+        for (int i = 1; i < args.length; i++) {
+            mergeReports(new File(args[i]), reportsDir);
+        }
+        PageDurationHistory.getDefault().update(PagePartitioner.readDurations(reportsDir));
+    }
+
+    /**
+     * Creates new.
+     * @param aResultsDir directory containing shard directories, to write merged results to.
+     * @param aSuiteName name of suite run.
+     */
+    public ShardResultsMerger(File aResultsDir, String aSuiteName) {
+        resultsDir = aResultsDir;
+        suiteName = aSuiteName;
+    }
+
+    /**
+     * Copies HTML results of all shards to results directory, and writes overview of all their pages.
+     * @throws IOException if results could not be merged.
+     */
+    public void mergeFitNesseResults() throws IOException {
+        String overviewName = getOverviewName();
+        StringBuilder rows = new StringBuilder();
+        for (File shardDir : getShardDirs()) {
+            for (File file : shardDir.listFiles()) {
+                String name = file.getName();
+                if (name.equals(overviewName)) {
+                    rows.append(getSummaryRows(file));
+                } else if (!name.equals("index.html")) {
+                    File target = new File(resultsDir, name);
+                    if (file.isDirectory()) {
+                        FileUtils.copyDirectory(file, target);
+                    } else {
+                        FileUtils.copyFile(file, target);
+                    }
+                }
+            }
+        }
+        writeOverview(rows.toString());
+    }
+
+    /**
+     * Copies JUnit XML reports of a shard.
+     * @param shardReportsDir directory containing the shard's reports.
+     * @param reportsDir directory to copy reports to.
+     * @throws IOException if reports could not be copied.
+     */
+    public static void mergeReports(File shardReportsDir, File reportsDir) throws IOException {
+        File[] reports = shardReportsDir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(".xml");
+            }
+        });
+        if (reports == null) {
+            throw new IOException("Not a directory: " + shardReportsDir.getAbsolutePath());
+        }
+        for (File report : reports) {
+            FileUtils.copyFileToDirectory(report, reportsDir);
+        }
+    }
+
+    /**
+     * @return shard directories, ordered by name.
+     */
+    protected File[] getShardDirs() {
+        File[] result = resultsDir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isDirectory() && file.getName().startsWith(SHARD_DIR_PREFIX);
+            }
+        });
+        if (result == null) {
+            result = new File[0];
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    protected String getSummaryRows(File overview) {
+        String html = FileUtil.readFile(overview);
+        String result = "";
+        int start = html.indexOf(JavaFormatter.TestResultsSummaryTable.SUMMARY_HEADER);
+        if (start > -1) {
+            start += JavaFormatter.TestResultsSummaryTable.SUMMARY_HEADER.length();
+            int end = html.indexOf(JavaFormatter.TestResultsSummaryTable.SUMMARY_FOOTER, start);
+            if (end > -1) {
+                result = html.substring(start, end);
+            }
+        }
+        return result;
+    }
+
+    protected void writeOverview(String rows) throws IOException {
+        JavaFormatter.FolderResultsRepository repository =
+                new JavaFormatter.FolderResultsRepository(resultsDir.getPath());
+        repository.open(suiteName);
+        try {
+            repository.write(JavaFormatter.TestResultsSummaryTable.SUMMARY_HEADER
+                                + rows
+                                + JavaFormatter.TestResultsSummaryTable.SUMMARY_FOOTER);
+        } finally {
+            repository.close();
+        }
+        File overview = new File(resultsDir, getOverviewName());
+        String overviewHtml = FileUtil.readFile(overview);
+        FileUtil.writeFile(new File(resultsDir, "index.html").getAbsolutePath(), overviewHtml);
+    }
+
+    private String getOverviewName() {
+        return suiteName + ".html";
+    }
+}
@@ -1,8 +1,12 @@
 package nl.hsac.fitnesse.fixture.slim;
 
+import nl.hsac.fitnesse.fixture.Environment;
+import nl.hsac.fitnesse.fixture.util.HttpResponse;
+import nl.hsac.fitnesse.fixture.util.HttpServer;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests HttpTest.
@@ -91,4 +95,71 @@ public class HttpTestTest {
 
         assertEquals("<MyContent>\n  <content a='c'/>\n</MyContent>", cleaned);
     }
+
+    @Test
+    public void testBatch() {
+        HttpResponse mockResponse = new HttpResponse();
+        mockResponse.setStatusCode(200);
+        mockResponse.setResponse("<ok/>");
+        HttpServer<HttpResponse> server = new HttpServer<HttpResponse>("/batch", mockResponse);
+        try {
+            String url = "http:/" + server.getAddress() + "/batch";
+            HttpTest batchClient = new HttpTest();
+            batchClient.setBatchConcurrency(3);
+            for (int i = 1; i <= 5; i++) {
+                batchClient.reset();
+                batchClient.setValueFor(Integer.toString(i), "nr");
+                assertEquals(i, batchClient.queueGetFrom(url));
+            }
+            assertEquals(5, batchClient.queuedRequestCount());
+
+            assertTrue(batchClient.sendBatch());
+            assertEquals(0, batchClient.queuedRequestCount());
+            // server counts a request after its response is sent
+            assertTrue(server.waitForRequests(5, 1000));
+
+            for (int i = 1; i <= 5; i++) {
+                assertTrue(batchClient.useResponseOfBatchRequest(i));
+                assertEquals(url + "?nr=" + i, batchClient.request());
+                assertEquals(200, batchClient.responseStatus());
+                assertEquals("<ok/>", batchClient.response());
+            }
+        } finally {
+            server.stopServer();
+        }
+    }
+
+    @Test(expected = SlimFixtureException.class)
+    public void testBatchUnknownRequest() {
+        client.sendBatch();
+        client.useResponseOfBatchRequest(1);
+    }
+
+    @Test
+    public void testStreamTemplate() {
+        HttpResponse mockResponse = new HttpResponse();
+        mockResponse.setStatusCode(200);
+        mockResponse.setResponse("<ok/>");
+        HttpServer<HttpResponse> server = new HttpServer<HttpResponse>("/stream", mockResponse);
+        int previewLength = Environment.getInstance().getRequestPreviewLength();
+        Environment.getInstance().setRequestPreviewLength(20);
+        try {
+            String url = "http:/" + server.getAddress() + "/stream";
+            client.template("samplePost.ftl.xml");
+            client.setValueFor("NL", "countryName");
+            client.setStreamTemplateRequests(true);
+
+            assertTrue(client.postTemplateTo(url));
+            assertTrue(mockResponse.getRequest().contains("<ns1:CountryName>NL</ns1:CountryName>"));
+            assertEquals("<s11:Envelope xmlns:...", client.request());
+
+            client.setStreamTemplateRequestsChunked(false);
+            assertTrue(client.postTemplateTo(url));
+            assertTrue(mockResponse.getRequest().contains("<ns1:CountryName>NL</ns1:CountryName>"));
+            assertTrue(server.waitForRequests(2, 1000));
+        } finally {
+            Environment.getInstance().setRequestPreviewLength(previewLength);
+            server.stopServer();
+        }
+    }
 }
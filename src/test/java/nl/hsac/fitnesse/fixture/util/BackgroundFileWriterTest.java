@@ -0,0 +1,98 @@
+package nl.hsac.fitnesse.fixture.util;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests BackgroundFileWriter.
+ */
+public class BackgroundFileWriterTest {
+    private final String baseName = "target/background-writer-test-" + System.currentTimeMillis() + "/file";
+    private final BackgroundFileWriter writer = new BackgroundFileWriter();
+
+    @Test
+    public void testWriteAndFlush() {
+        final CountDownLatch release = new CountDownLatch(1);
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        String path = writer.write(baseName, "txt", "content".getBytes());
+
+        // name is reserved immediately, content follows later
+        File file = new File(path);
+        assertTrue(file.exists());
+        assertEquals(0, file.length());
+
+        release.countDown();
+        writer.flush();
+
+        assertEquals("content", FileUtil.streamToString(openFile(file), path));
+    }
+
+    @Test
+    public void testUniqueNames() {
+        String path1 = writer.write(baseName, "txt", "1".getBytes());
+        String path2 = writer.write(baseName, "txt", "2".getBytes());
+        writer.flush();
+
+        assertTrue(path1.endsWith("file.txt"));
+        assertTrue(path2.endsWith("file_1.txt"));
+        assertEquals("2", FileUtil.streamToString(openFile(new File(path2)), path2));
+    }
+
+    @Test
+    public void testDisabled() {
+        writer.setEnabled(false);
+
+        String path = writer.write(baseName, "txt", "now".getBytes());
+
+        assertEquals("now", FileUtil.streamToString(openFile(new File(path)), path));
+    }
+
+    @Test
+    public void testFailureIsCountedAndReportedByFlush() {
+        final IllegalStateException failure = new IllegalStateException("expected by test");
+        for (int i = 0; i < 2; i++) {
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    throw failure;
+                }
+            });
+        }
+        try {
+            writer.flush();
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        }
+
+        assertEquals(2, writer.getFailures());
+        // failure is reported once
+        writer.flush();
+    }
+
+    private FileInputStream openFile(File file) {
+        try {
+            return new FileInputStream(file);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -2,6 +2,8 @@ package nl.hsac.fitnesse.fixture.util;
 
 import org.junit.Test;
 
+import java.io.File;
+
 import static org.junit.Assert.assertEquals;
 
 public class BinaryHttpResponseTest {
@@ -28,4 +30,14 @@ public class BinaryHttpResponseTest {
         response.setRequest(reqUrl + "?hallo=false");
         assertEquals("afvalkalender2015pdf.pdf", response.getFileName());
     }
+
+    @Test
+    public void testContentStreamFromDownloadedFile() throws Exception {
+        File file = FileUtil.writeFile("target/binary-response-test-" + System.nanoTime() + ".txt", "hallo");
+        BinaryHttpResponse response = new BinaryHttpResponse();
+        response.setDownloadedFile(file.getAbsolutePath());
+
+        assertEquals(5, response.getContentLength());
+        assertEquals("hallo", FileUtil.streamToString(response.getContentStream(), file.getName()));
+    }
 }
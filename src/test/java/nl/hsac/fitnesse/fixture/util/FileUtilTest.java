@@ -0,0 +1,154 @@
+package nl.hsac.fitnesse.fixture.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests FileUtil.
+ */
+public class FileUtilTest {
+    private final File dir = new File("target/file-util-test-" + System.nanoTime());
+
+    @Test
+    public void testUniqueNames() {
+        String baseName = new File(dir, "error").getPath();
+
+        File first = FileUtil.createNewFile(baseName, "png");
+        File second = FileUtil.createNewFile(baseName, "png");
+        File other = FileUtil.createNewFile(baseName, "html");
+
+        assertEquals("error.png", first.getName());
+        assertEquals("error_1.png", second.getName());
+        assertEquals("error.html", other.getName());
+        assertTrue(second.exists());
+    }
+
+    @Test
+    public void testContinuesAfterExistingFiles() {
+        dir.mkdirs();
+        FileUtil.writeFile(new File(dir, "page.html").getPath(), "a");
+        FileUtil.writeFile(new File(dir, "page_7.html").getPath(), "b");
+        FileUtil.writeFile(new File(dir, "page_x.html").getPath(), "c");
+
+        String path = FileUtil.saveToFile(new File(dir, "page").getPath(), "html", "d".getBytes());
+
+        assertEquals("page_8.html", new File(path).getName());
+    }
+
+    @Test
+    public void testIndexFollowsDirectoryContent() {
+        String baseName = new File(dir, "shot").getPath();
+        File first = FileUtil.createNewFile(baseName, "png");
+        File second = FileUtil.createNewFile(baseName, "png");
+
+        // created by someone else
+        FileUtil.writeFile(new File(dir, "shot_2.png").getPath(), "a");
+        FileUtil.writeFile(new File(dir, "shot_5.png").getPath(), "b");
+        assertEquals("shot_6.png", FileUtil.createNewFile(baseName, "png").getName());
+
+        // directory cleaned
+        for (File file : dir.listFiles()) {
+            assertTrue(file.delete());
+        }
+        assertEquals(first.getName(), FileUtil.createNewFile(baseName, "png").getName());
+        assertEquals(second.getName(), FileUtil.createNewFile(baseName, "png").getName());
+    }
+
+    @Test
+    public void testParallelWriters() throws Exception {
+        final String baseName = new File(dir, "parallel").getPath();
+        final List<String> names = Collections.synchronizedList(new ArrayList<String>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 25; j++) {
+                        names.add(FileUtil.createNewFile(baseName, "txt").getName());
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Set<String> unique = new HashSet<String>(names);
+        assertEquals(100, unique.size());
+        assertTrue(unique.contains("parallel.txt"));
+        assertTrue(unique.contains("parallel_99.txt"));
+    }
+
+    @Test
+    public void testStreamToString() {
+        String content = "Unicode \u20ac " + repeat("0123456789", 20000);
+
+        assertEquals(content, FileUtil.streamToString(new ByteArrayInputStream(bytes(content)), "test"));
+        assertEquals("", FileUtil.streamToString(new ByteArrayInputStream(new byte[0]), "empty"));
+    }
+
+    @Test
+    public void testReadFile() throws Exception {
+        dir.mkdirs();
+        String small = "small \u20ac";
+        // larger than the buffer used for streams of unknown size
+        String large = repeat("large \u20ac ", 200000);
+        File smallFile = FileUtil.writeFile(new File(dir, "small.txt").getPath(), small);
+        File largeFile = FileUtil.writeFile(new File(dir, "large.txt").getPath(), large);
+        File emptyFile = FileUtil.writeFile(new File(dir, "empty.txt").getPath(), "");
+
+        assertEquals(small, FileUtil.readFile(smallFile));
+        assertEquals(large, FileUtil.readFile(largeFile));
+        assertEquals("", FileUtil.readFile(emptyFile));
+        assertEquals(large, FileUtil.streamToString(new FileInputStream(largeFile), "large"));
+        // file must not be locked after reading
+        assertTrue(largeFile.delete());
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+        dir.mkdirs();
+        String content = repeat("copy me ", 50000);
+        File source = FileUtil.writeFile(new File(dir, "source.txt").getPath(), content);
+        File target = new File(dir, "target.txt");
+
+        int fileCopied = FileUtil.copy(new FileInputStream(source), new FileOutputStream(target));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int streamCopied = FileUtil.copy(new FileInputStream(target), out);
+
+        assertEquals(source.length(), fileCopied);
+        assertEquals(source.length(), streamCopied);
+        assertEquals(content, new String(out.toByteArray(), "UTF-8"));
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder result = new StringBuilder(s.length() * count);
+        for (int i = 0; i < count; i++) {
+            result.append(s);
+        }
+        return result.toString();
+    }
+
+    private static byte[] bytes(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package nl.hsac.fitnesse.fixture.util;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.pool.PoolStats;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests HttpClient.
+ */
+public class HttpClientTest {
+    private final HttpClient client = new HttpClient();
+
+    @Test
+    public void testPoolLimits() {
+        client.setMaxTotalConnections(50);
+        client.setMaxConnectionsPerRoute(10);
+        client.setMaxConnectionsFor("https://mysite.nl/test", 25);
+
+        assertEquals(50, client.getMaxTotalConnections());
+        assertEquals(10, client.getMaxConnectionsPerRoute());
+        assertEquals(25, client.getMaxConnectionsFor("https://mysite.nl:443/other"));
+        assertEquals(10, client.getMaxConnectionsFor("http://mysite.nl/test"));
+    }
+
+    @Test
+    public void testPoolStatistics() {
+        client.setMaxTotalConnections(7);
+
+        Map<String, PoolStats> stats = client.getConnectionPoolStatistics();
+        PoolStats total = stats.get("total");
+        assertEquals(7, total.getMax());
+        assertEquals(0, total.getLeased());
+        assertEquals(0, total.getPending());
+    }
+
+    @Test
+    public void testIdleConnectionTimeout() {
+        assertEquals(-1, client.getIdleConnectionTimeoutMillis());
+
+        client.setIdleConnectionTimeoutMillis(5000);
+        assertEquals(5000, client.getIdleConnectionTimeoutMillis());
+
+        client.setIdleConnectionTimeoutMillis(0);
+        assertEquals(-1, client.getIdleConnectionTimeoutMillis());
+    }
+
+    @Test
+    public void testValidateAfterInactivity() {
+        client.setValidateAfterInactivityMillis(1500);
+        assertEquals(1500, client.getValidateAfterInactivityMillis());
+        assertTrue(client.getKeepAliveMillis() < 0);
+    }
+
+    @Test
+    public void testSmallResponseInMemory() throws IOException {
+        HttpResponse response = new HttpResponse();
+        client.storeResponseContent(response, new StringEntity("<één/>", ContentType.create("text/xml", "UTF-8")));
+        assertNull(response.response);
+        assertEquals("<één/>", response.getResponse());
+    }
+
+    @Test
+    public void testLargeResponseSpooled() throws IOException {
+        client.setResponseSpoolThreshold(10);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            content.append("<line nr='").append(i).append("'/>");
+        }
+        HttpResponse response = new HttpResponse();
+        client.storeResponseContent(response, new StringEntity(content.toString(), ContentType.create("text/xml", "UTF-8")));
+        assertNull(response.response);
+        assertEquals(content.toString(), response.getResponse());
+    }
+
+    @Test
+    public void testReleasedResponseIsRemoved() throws IOException {
+        client.setResponseSpoolThreshold(10);
+        HttpResponse response = new HttpResponse();
+        client.storeResponseContent(response, new StringEntity("<large-enough-to-be-spooled/>", ContentType.TEXT_XML));
+
+        response.release();
+
+        assertNull(response.getResponse());
+    }
+
+    @Test
+    public void testSharedResponseIsNotReleased() throws IOException {
+        client.setResponseSpoolThreshold(10);
+        HttpResponse response = new HttpResponse();
+        client.storeResponseContent(response, new StringEntity("<large-enough-to-be-spooled/>", ContentType.TEXT_XML));
+        HttpResponse.parse(response.toString());
+
+        response.release();
+
+        assertEquals("<large-enough-to-be-spooled/>", response.getResponse());
+    }
+}
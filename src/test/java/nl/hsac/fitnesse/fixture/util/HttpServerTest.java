@@ -0,0 +1,164 @@
+package nl.hsac.fitnesse.fixture.util;
+
+import com.sun.net.httpserver.HttpHandler;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests HttpServer.
+ */
+public class HttpServerTest {
+    private final HttpClient client = new HttpClient();
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        int count = 20;
+        MockXmlHttpResponseSequence responses = new MockXmlHttpResponseSequence();
+        for (int i = 0; i < count; i++) {
+            responses.addResponse("<response>" + i + "</response>");
+        }
+        HttpServer<MockXmlHttpResponseSequence> server = new HttpServer<MockXmlHttpResponseSequence>(
+                "/concurrent", responses, Executors.newFixedThreadPool(4), 0);
+        client.setMaxConnectionsPerRoute(count);
+        ExecutorService clients = Executors.newFixedThreadPool(5);
+        try {
+            final String url = "http:/" + server.getAddress() + "/concurrent";
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < count; i++) {
+                results.add(clients.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        HttpResponse response = new HttpResponse();
+                        client.get(url, response, null);
+                        return response.getResponse();
+                    }
+                }));
+            }
+            Set<String> received = new HashSet<String>();
+            for (Future<String> result : results) {
+                received.add(result.get());
+            }
+
+            // each configured response is served exactly once
+            assertEquals(count, received.size());
+            // server counts request after response is sent
+            assertTrue(server.waitForRequests(count, 5000));
+            assertEquals(count, server.getRequestsReceived());
+            assertEquals(count, server.getRequestLatencies().size());
+            assertNull(responses.getMissingRequestsMessage());
+            assertNull(responses.getExtraRequestsMessage());
+        } finally {
+            clients.shutdown();
+            server.stopServer();
+        }
+    }
+
+    @Test
+    public void testWaitForRequests() throws Exception {
+        HttpResponse mockResponse = new HttpResponse();
+        mockResponse.setStatusCode(200);
+        mockResponse.setResponse("<ok/>");
+        HttpServer<HttpResponse> server = new HttpServer<HttpResponse>("/wait", mockResponse);
+        try {
+            final String url = "http:/" + server.getAddress() + "/wait";
+            assertFalse(server.waitForRequests(1, 10));
+
+            long start = System.currentTimeMillis();
+            Thread caller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    client.get(url, new HttpResponse(), null);
+                    client.get(url, new HttpResponse(), null);
+                }
+            });
+            caller.start();
+            assertTrue(server.waitForRequests(2, 5000));
+            assertEquals(2, server.getRequestArrivalTimes().size());
+            assertTrue(server.getRequestArrivalTimes().get(0) >= start);
+            caller.join();
+        } finally {
+            server.stopServer();
+        }
+    }
+
+    @Test
+    public void testSharedListener() throws Exception {
+        HttpResponse firstResponse = new HttpResponse();
+        firstResponse.setStatusCode(200);
+        firstResponse.setResponse("<first/>");
+        HttpResponse secondResponse = new HttpResponse();
+        secondResponse.setStatusCode(200);
+        secondResponse.setResponse("<second/>");
+
+        HttpServer<HttpResponse> first = new HttpServer<HttpResponse>("/first", firstResponse);
+        HttpServer<HttpResponse> second = new HttpServer<HttpResponse>(first, "/second", secondResponse);
+        try {
+            assertTrue(first.getAddress().getPort() > 0);
+            assertEquals(first.getAddress(), second.getAddress());
+
+            HttpResponse response = new HttpResponse();
+            client.get("http:/" + second.getAddress() + "/second", response, null);
+            assertEquals("<second/>", response.getResponse());
+            assertTrue(second.waitForRequests(1, 5000));
+            assertEquals(0, first.getRequestsReceived());
+            assertEquals(1, second.getRequestsReceived());
+
+            first.stopServer();
+            // second still served after first is stopped
+            response = new HttpResponse();
+            client.get("http:/" + second.getAddress() + "/second", response, null);
+            assertEquals("<second/>", response.getResponse());
+            assertTrue(second.waitForRequests(2, 5000));
+            assertEquals(2, second.getRequestsReceived());
+        } finally {
+            first.stopServer();
+            second.stopServer();
+        }
+    }
+
+    @Test
+    public void testListenerSharedAfterOwnerStopped() throws Exception {
+        HttpResponse firstResponse = new HttpResponse();
+        HttpServer<HttpResponse> first = new HttpServer<HttpResponse>("/first", firstResponse);
+        HttpServer<HttpResponse> second = new HttpServer<HttpResponse>(first, "/second", new HttpResponse());
+        first.stopServer();
+        assertTrue(first.isListenerActive());
+
+        HttpServer<HttpResponse> third = new HttpServer<HttpResponse>(first, "/third", new HttpResponse());
+        second.stopServer();
+        assertTrue(third.isListenerActive());
+        third.stopServer();
+        assertFalse(third.isListenerActive());
+    }
+
+    @Test
+    public void testFailedShareDoesNotKeepListener() throws Exception {
+        HttpServer<HttpResponse> first = new HttpServer<HttpResponse>("/first", new HttpResponse());
+        try {
+            new HttpServer<HttpResponse>(first, "/broken", new HttpResponse()) {
+                @Override
+                protected HttpHandler getHandler(HttpResponse aResponse) {
+                    throw new IllegalStateException("expected by test");
+                }
+            };
+        } catch (IllegalStateException e) {
+            // setup failed
+        }
+        first.stopServer();
+
+        assertFalse(first.isListenerActive());
+    }
+}
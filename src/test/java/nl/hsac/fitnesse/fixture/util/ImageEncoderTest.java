@@ -0,0 +1,72 @@
+package nl.hsac.fitnesse.fixture.util;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests ImageEncoder.
+ */
+public class ImageEncoderTest {
+    private final byte[] png = createPng(400, 300);
+
+    @Test
+    public void testPngIsNotConverted() {
+        assertSame(png, new ImageEncoder("png", 0.8f).encode(png));
+    }
+
+    @Test
+    public void testIsSupported() {
+        assertTrue(ImageEncoder.isSupported("png"));
+        assertTrue(ImageEncoder.isSupported("jpg"));
+        assertFalse(ImageEncoder.isSupported("docx"));
+        assertFalse(ImageEncoder.isSupported(null));
+    }
+
+    @Test
+    public void testJpg() throws IOException {
+        byte[] jpg = new ImageEncoder("jpg", 0.5f).encode(png);
+
+        // JPEG files start with SOI marker
+        assertEquals((byte) 0xFF, jpg[0]);
+        assertEquals((byte) 0xD8, jpg[1]);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpg));
+        assertEquals(400, image.getWidth());
+        assertEquals(300, image.getHeight());
+    }
+
+    @Test
+    public void testThumbnail() throws IOException {
+        byte[] thumbnail = new ImageEncoder("png", 0.8f).createThumbnail(png, 150);
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(thumbnail));
+        assertEquals(200, image.getWidth());
+        assertEquals(150, image.getHeight());
+    }
+
+    @Test
+    public void testThumbnailOfSmallImage() {
+        assertSame(png, new ImageEncoder("png", 0.8f).createThumbnail(png, 300));
+    }
+
+    private static byte[] createPng(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(10, 10, 0xFFFF0000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", bytes);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -6,6 +6,8 @@ import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -95,4 +97,14 @@ public class JsonPathHelperTest {
         List<Object> results = helper.getAllJsonPath(JSON, "$.store.book[2].author.name");
         assertEquals(Collections.emptyList(), results);
     }
+
+    @Test
+    public void testJsonParsedOnce() {
+        assertSame(helper.parse(JSON), helper.parse(JSON));
+        assertSame(helper.getCompiledPath("$.store.book[2].author"), helper.getCompiledPath("$.store.book[2].author"));
+
+        String otherJson = "{\"expensive\": 10}";
+        assertNotSame(helper.parse(JSON), helper.parse(otherJson));
+        assertEquals(10, helper.getJsonPath(otherJson, "$.expensive"));
+    }
 }
@@ -0,0 +1,150 @@
+package nl.hsac.fitnesse.fixture.util;
+
+import org.apache.http.HttpStatus;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests MockXmlHttpResponseSequence.
+ */
+public class MockXmlHttpResponseSequenceTest {
+    private final MockXmlHttpResponseSequence sequence = new MockXmlHttpResponseSequence();
+
+    @Test
+    public void testSequence() {
+        sequence.addResponse("<one/>");
+        sequence.addResponse("<two/>");
+        assertNotNull(sequence.getMissingRequestsMessage());
+
+        sequence.setRequest("<a/>");
+        assertEquals("<one/>", sequence.getResponse());
+        sequence.setRequest("<b/>");
+        assertEquals("<two/>", sequence.getResponse());
+        assertNull(sequence.getMissingRequestsMessage());
+        assertNull(sequence.getExtraRequestsMessage());
+
+        sequence.setRequest("<c/>");
+        assertEquals(HttpStatus.SC_NOT_FOUND, sequence.getStatusCode());
+        assertEquals(Arrays.asList("<c/>"), sequence.getNotExpected());
+        assertNotNull(sequence.getExtraRequestsMessage());
+    }
+
+    @Test
+    public void testRequestWithEmptyBody() {
+        sequence.addResponse("<one/>");
+
+        sequence.setRequest("");
+        assertEquals("<one/>", sequence.getResponse());
+        // an empty request can not be distinguished from no request
+        assertEquals(Arrays.asList("<one/>"), sequence.getNotCalled());
+        assertNotNull(sequence.getMissingRequestsMessage());
+
+        sequence.setRequest("<a/>");
+        sequence.setRequest("");
+        assertEquals(HttpStatus.SC_NOT_FOUND, sequence.getStatusCode());
+        assertEquals(Arrays.asList("<one/>", ""), sequence.getNotCalled());
+        assertNotNull(sequence.getMissingRequestsMessage());
+    }
+
+    @Test
+    public void testRuleAddedAfterSequentialRequests() {
+        sequence.addResponse("<one/>");
+        sequence.setRequest("<a/>");
+        assertEquals("<one/>", sequence.getResponse());
+
+        sequence.addResponse(new MockResponseRule("GET", "/mock"), "<get/>");
+        sequence.setRequest("GET", "/mock", null, "GET: /mock");
+        assertEquals("<get/>", sequence.getResponse());
+        sequence.setRequest("GET", "/other", null, "GET: /other");
+        assertEquals(HttpStatus.SC_NOT_FOUND, sequence.getStatusCode());
+    }
+
+    @Test
+    public void testMethodAndPathRules() {
+        for (int i = 0; i < 1000; i++) {
+            sequence.addResponse(new MockResponseRule("GET", "/mock/" + i), "<r>" + i + "</r>");
+        }
+        sequence.addResponse(new MockResponseRule("DELETE", null), "<deleted/>");
+        sequence.addResponse("<fallback/>");
+
+        sequence.setRequest("get", "/mock/500", null, "GET: /mock/500");
+        assertEquals("<r>500</r>", sequence.getResponse());
+        sequence.setRequest("DELETE", "/mock/1", null, "DELETE: /mock/1");
+        assertEquals("<deleted/>", sequence.getResponse());
+        sequence.setRequest("GET", "/mock/500", null, "GET: /mock/500");
+        assertEquals("<fallback/>", sequence.getResponse());
+        sequence.setRequest("GET", "/mock/500", null, "GET: /mock/500");
+        assertEquals(HttpStatus.SC_NOT_FOUND, sequence.getStatusCode());
+
+        assertEquals(999, sequence.getNotCalled().size());
+        assertEquals(1, sequence.getNotExpected().size());
+    }
+
+    @Test
+    public void testConditionRules() {
+        MockResponseRule headerRule = new MockResponseRule("POST", "/mock");
+        headerRule.setHeader("Soapaction", "getCustomer");
+        sequence.addResponse(headerRule, "<customer/>");
+        MockResponseRule xPathRule = new MockResponseRule("POST", "/mock");
+        xPathRule.setXPath("/order/@id", "12");
+        sequence.addResponse(xPathRule, "<order12/>");
+        MockResponseRule jsonPathRule = new MockResponseRule("POST", "/mock");
+        jsonPathRule.setJsonPath("$.id", "13");
+        sequence.addResponse(jsonPathRule, "<order13/>");
+
+        sequence.setRequest("POST", "/mock", null, "{\"id\": 13}");
+        assertEquals("<order13/>", sequence.getResponse());
+        sequence.setRequest("POST", "/mock", null, "<order id='12'/>");
+        assertEquals("<order12/>", sequence.getResponse());
+
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put("Soapaction", Arrays.asList("getCustomer"));
+        sequence.setRequest("POST", "/mock", headers, "<get/>");
+        assertEquals("<customer/>", sequence.getResponse());
+
+        assertNull(sequence.getMissingRequestsMessage());
+        assertNull(sequence.getExtraRequestsMessage());
+    }
+
+    @Test
+    public void testRulesIndexedByConditionValue() {
+        for (int i = 0; i < 1000; i++) {
+            MockResponseRule rule = new MockResponseRule("POST", "/mock");
+            rule.setXPath("/order/@id", Integer.toString(i));
+            sequence.addResponse(rule, "<order>" + i + "</order>");
+        }
+        MockResponseRule combined = new MockResponseRule("POST", "/mock");
+        combined.setHeader("Soapaction", "getOrder");
+        combined.setJsonPath("$.id", "7");
+        sequence.addResponse(combined, "<json7/>");
+
+        sequence.setRequest("POST", "/mock", null, "<order id='700'/>");
+        assertEquals("<order>700</order>", sequence.getResponse());
+
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put("Soapaction", Arrays.asList("getOrder"));
+        sequence.setRequest("POST", "/mock", headers, "{\"id\": 8}");
+        assertEquals(HttpStatus.SC_NOT_FOUND, sequence.getStatusCode());
+        sequence.setRequest("POST", "/mock", headers, "{\"id\": 7}");
+        assertEquals("<json7/>", sequence.getResponse());
+    }
+
+    @Test
+    public void testRulesMatchInOrderAdded() {
+        sequence.addResponse(new MockResponseRule(null, "/mock"), "<anyMethod/>");
+        sequence.addResponse(new MockResponseRule("GET", "/mock"), "<get/>");
+
+        sequence.setRequest("GET", "/mock", null, "GET: /mock");
+        assertEquals("<anyMethod/>", sequence.getResponse());
+        sequence.setRequest("GET", "/mock", null, "GET: /mock");
+        assertEquals("<get/>", sequence.getResponse());
+    }
+}
@@ -0,0 +1,121 @@
+package nl.hsac.fitnesse.fixture.util;
+
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests SeleniumHelper.
+ */
+public class SeleniumHelperTest {
+    private final SeleniumHelper helper = new SeleniumHelper();
+
+    @Test
+    public void testUnsupportedScreenshotFormat() {
+        try {
+            helper.setScreenshotFormat("docx");
+            fail("Expected exception");
+        } catch (IllegalArgumentException e) {
+            assertEquals(ImageEncoder.PNG, helper.getScreenshotFormat());
+        }
+    }
+
+    @Test
+    public void testThumbnailLeftByEarlierRunIsNotReused() throws IOException {
+        String dir = "target/selenium-helper-test-" + System.nanoTime() + "/";
+        new File(dir).mkdirs();
+        File old = FileUtil.writeFile(dir + "shot_thumb.png", "old");
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB), "png", png);
+
+        String screenshot = helper.writeScreenshot(dir + "shot", png.toByteArray(), 10);
+        helper.getFileWriter().flush();
+
+        String thumbnail = helper.getThumbnail(screenshot);
+        assertNotEquals(old.getAbsolutePath(), thumbnail);
+        assertTrue(thumbnail, new File(thumbnail).exists());
+        assertEquals("old", FileUtil.readFile(old));
+        assertNull(helper.getThumbnail(helper.writeScreenshot(dir + "shot", png.toByteArray(), 0)));
+        helper.getFileWriter().flush();
+    }
+
+    @Test
+    public void testMaxPollIntervalMustBePositive() {
+        int defaultMax = helper.getDefaultMaxPollIntervalMillis();
+        try {
+            helper.setDefaultMaxPollIntervalMillis(0);
+            fail("Expected exception");
+        } catch (IllegalArgumentException e) {
+            assertEquals(defaultMax, helper.getDefaultMaxPollIntervalMillis());
+        }
+    }
+
+    @Test
+    public void testWaitUntilRejectsNonPositiveMaxPollInterval() {
+        try {
+            helper.waitUntil(1, 100, 0, new ExpectedCondition<Boolean>() {
+                @Override
+                public Boolean apply(WebDriver webDriver) {
+                    fail("Condition should not be evaluated");
+                    return null;
+                }
+            });
+            fail("Expected exception");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Max poll interval must be positive, but was: 0", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testNestedElementPrefersInteractableField() {
+        WebElement hidden = element(false, null);
+        WebElement visible = element(true, null);
+        WebElement label = element(true, Arrays.asList(hidden, visible));
+
+        assertSame(visible, helper.getNestedElementForValue(label));
+        assertSame(hidden, helper.getNestedElementForValue(element(true, Arrays.asList(hidden))));
+        assertNull(helper.getNestedElementForValue(element(true, Arrays.<WebElement>asList())));
+    }
+
+    private WebElement element(final boolean displayed, final List<WebElement> nested) {
+        return (WebElement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {WebElement.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        Object result = null;
+                        if ("isDisplayed".equals(name) || "isEnabled".equals(name)) {
+                            result = displayed;
+                        } else if ("findElements".equals(name) && args[0] instanceof By) {
+                            result = nested;
+                        } else if ("equals".equals(name)) {
+                            result = proxy == args[0];
+                        } else if ("hashCode".equals(name)) {
+                            result = System.identityHashCode(proxy);
+                        }
+                        return result;
+                    }
+                });
+    }
+}
@@ -0,0 +1,134 @@
+package nl.hsac.fitnesse.fixture.util;
+
+import freemarker.cache.CacheStorage;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests TemplateCache.
+ */
+public class TemplateCacheTest {
+    private final FreeMarkerHelper helper = new FreeMarkerHelper();
+    private File dir;
+    private Configuration configuration;
+    private TemplateCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("templates", "");
+        dir.delete();
+        dir.mkdirs();
+        configuration = new Configuration();
+        configuration.setDirectoryForTemplateLoading(dir);
+        cache = new TemplateCache(configuration, helper);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testCompiledOnce() throws IOException {
+        writeTemplate("a.ftl", "Hello ${name}");
+
+        Template first = cache.getTemplate("a.ftl");
+        Template second = cache.getTemplate("a.ftl");
+
+        assertSame(first, second);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals("Hello me", helper.processTemplate(second, Collections.singletonMap("name", "me")));
+    }
+
+    @Test
+    public void testReloadWhenModified() throws IOException {
+        File file = writeTemplate("b.ftl", "Old ${name}");
+        cache.setReloadCheckIntervalMillis(0);
+        Template first = cache.getTemplate("b.ftl");
+
+        writeTemplate("b.ftl", "New ${name}");
+        file.setLastModified(file.lastModified() + 10000);
+        Template second = cache.getTemplate("b.ftl");
+
+        assertNotSame(first, second);
+        assertEquals(1, cache.getReloads());
+        assertEquals("New me", helper.processTemplate(second, Collections.singletonMap("name", "me")));
+    }
+
+    @Test
+    public void testMaxSize() throws IOException {
+        cache.setMaxSize(2);
+        for (int i = 0; i < 5; i++) {
+            writeTemplate(i + ".ftl", "nr " + i);
+            cache.getTemplate(i + ".ftl");
+        }
+        assertEquals(2, cache.getSize());
+        assertEquals(3, cache.getEvictions());
+    }
+
+    @Test
+    public void testEvictedTemplateRemovedFromConfiguration() throws IOException {
+        final Map<Object, Object> configurationCache = new HashMap<Object, Object>();
+        configuration.setCacheStorage(new CacheStorage() {
+            @Override
+            public Object get(Object key) {
+                return configurationCache.get(key);
+            }
+
+            @Override
+            public void put(Object key, Object value) {
+                configurationCache.put(key, value);
+            }
+
+            @Override
+            public void remove(Object key) {
+                configurationCache.remove(key);
+            }
+
+            @Override
+            public void clear() {
+                configurationCache.clear();
+            }
+        });
+        cache.setMaxSize(2);
+        for (int i = 0; i < 5; i++) {
+            writeTemplate(i + ".ftl", "nr " + i);
+            cache.getTemplate(i + ".ftl");
+        }
+
+        assertEquals(2, configurationCache.size());
+    }
+
+    @Test
+    public void testPrecompile() {
+        configuration.setClassForTemplateLoading(getClass(), "/templates/");
+        int count = cache.precompileTemplates(getClass().getClassLoader(), "templates");
+
+        assertTrue(count > 0);
+        assertEquals(count, cache.getSize());
+        cache.getTemplate("samplePost.ftl.xml");
+        assertEquals(1, cache.getHits());
+    }
+
+    private File writeTemplate(String name, String content) throws IOException {
+        File file = new File(dir, name);
+        FileUtils.writeStringToFile(file, content, "UTF-8");
+        return file;
+    }
+}
@@ -0,0 +1,204 @@
+package nl.hsac.fitnesse.fixture.util;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests WebDriverPool.
+ */
+public class WebDriverPoolTest {
+    private final WebDriverPool pool = new WebDriverPool();
+
+    @Before
+    public void setUp() {
+        pool.setEnabled(true);
+    }
+
+    @Test
+    public void testReuse() {
+        FakeDriver driver = new FakeDriver();
+        assertNull(pool.acquire("firefox"));
+
+        pool.release("firefox", driver);
+
+        assertNull(pool.acquire("chrome"));
+        assertSame(driver, pool.acquire("firefox"));
+        assertEquals("about:blank", driver.url);
+        assertTrue(driver.cookiesDeleted);
+        assertFalse(driver.quit);
+        assertEquals(1, pool.getReuses());
+    }
+
+    @Test
+    public void testDisabled() {
+        FakeDriver driver = new FakeDriver();
+        pool.setEnabled(false);
+
+        pool.release("firefox", driver);
+
+        assertTrue(driver.quit);
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void testMaxUses() {
+        FakeDriver driver = new FakeDriver();
+        pool.setMaxUses(2);
+
+        pool.release("firefox", driver);
+        assertSame(driver, pool.acquire("firefox"));
+        pool.release("firefox", driver);
+
+        assertTrue(driver.quit);
+        assertNull(pool.acquire("firefox"));
+    }
+
+    @Test
+    public void testUnhealthyDriverIsDiscarded() {
+        FakeDriver driver = new FakeDriver();
+        pool.release("firefox", driver);
+        driver.healthy = false;
+
+        assertNull(pool.acquire("firefox"));
+        assertTrue(driver.quit);
+        assertEquals(1, pool.getDiscards());
+    }
+
+    @Test
+    public void testIdleTimeout() {
+        FakeDriver driver = new FakeDriver();
+        pool.setIdleTimeoutMillis(-1);
+
+        pool.release("firefox", driver);
+
+        assertTrue(driver.quit);
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void testIdleDriverIsQuitInBackground() throws InterruptedException {
+        FakeDriver driver = new FakeDriver();
+        pool.setIdleTimeoutMillis(200);
+
+        pool.release("firefox", driver);
+        assertEquals(1, pool.getIdleCount());
+
+        long end = System.currentTimeMillis() + 5000;
+        while (!driver.quit && System.currentTimeMillis() < end) {
+            Thread.sleep(50);
+        }
+        assertTrue(driver.quit);
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void testQuitAll() {
+        FakeDriver driver = new FakeDriver();
+        pool.release("firefox", driver);
+
+        pool.quitAll();
+
+        assertTrue(driver.quit);
+        assertNull(pool.acquire("firefox"));
+    }
+
+    private static class FakeDriver implements WebDriver {
+        private boolean healthy = true;
+        private volatile boolean quit;
+        private boolean cookiesDeleted;
+        private String url;
+
+        @Override
+        public void get(String s) {
+            url = s;
+        }
+
+        @Override
+        public String getCurrentUrl() {
+            return url;
+        }
+
+        @Override
+        public String getTitle() {
+            return null;
+        }
+
+        @Override
+        public List<WebElement> findElements(By by) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public WebElement findElement(By by) {
+            return null;
+        }
+
+        @Override
+        public String getPageSource() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void quit() {
+            quit = true;
+        }
+
+        @Override
+        public Set<String> getWindowHandles() {
+            return Collections.singleton(getWindowHandle());
+        }
+
+        @Override
+        public String getWindowHandle() {
+            if (!healthy) {
+                throw new WebDriverException("session is gone");
+            }
+            return "1";
+        }
+
+        @Override
+        public TargetLocator switchTo() {
+            return null;
+        }
+
+        @Override
+        public Navigation navigate() {
+            return null;
+        }
+
+        @Override
+        public Options manage() {
+            return (Options) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {Options.class},
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            if ("deleteAllCookies".equals(method.getName())) {
+                                cookiesDeleted = true;
+                            }
+                            return null;
+                        }
+                    });
+        }
+    }
+}
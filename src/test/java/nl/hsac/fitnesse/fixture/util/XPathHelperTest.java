@@ -65,4 +65,23 @@ public class XPathHelperTest {
         assertEquals(17, all.size());
         assertEquals("20000541", all.get(0));
     }
+
+    @Test
+    public void testCompiledExpressionReused() {
+        XPathHelper.clearCache();
+        String responseString = FileUtil.loadFile("leanapps/getPolicyCheckResponse.xml");
+        NamespaceContextImpl context = new NamespaceContextImpl();
+        context.add("lal", "http://www.leanapps.com/businesslayer/xml");
+
+        assertEquals("OK", XPathHelper.getXPath(context, responseString, "//lal:status/lal:status"));
+        assertEquals("OK", XPathHelper.getXPath(context, responseString, "//lal:status/lal:status"));
+        assertEquals(1, XPathHelper.getCacheMisses());
+        assertEquals(1, XPathHelper.getCacheHits());
+
+        // changing namespace context requires new compilation
+        context.add("other", "http://example.org");
+        assertEquals("OK", XPathHelper.getXPath(context, responseString, "//lal:status/lal:status"));
+        assertEquals(2, XPathHelper.getCacheMisses());
+        assertEquals(1, XPathHelper.getCacheHits());
+    }
 }
@@ -5,6 +5,7 @@ import org.apache.http.HttpStatus;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.w3c.dom.Document;
 
 import java.util.HashMap;
 import java.util.List;
@@ -173,4 +174,17 @@ public class XmlHttpResponseTest {
         List<String> xpathResults = resp.getAllXPath("//*/text()");
         assertEquals(3, xpathResults.size());
     }
+
+    @Test
+    public void testResponseParsedOnce() {
+        XmlHttpResponse resp = getOKResponse();
+        assertEquals("158.86", resp.getXPath("//*[local-name()='amountPremiumYear']"));
+        Document document = resp.getDocument(resp.getResponse());
+        assertEquals("13.44", resp.getXPath("//*[local-name()='calculatedResult']"));
+        assertSame(document, resp.getDocument(resp.getResponse()));
+
+        resp.setResponse(MULTIPLY_NODES_RESP);
+        assertNotSame(document, resp.getDocument(resp.getResponse()));
+        assertEquals(3, resp.getAllXPath("//*[local-name()='calculatedResult']/text()").size());
+    }
 }
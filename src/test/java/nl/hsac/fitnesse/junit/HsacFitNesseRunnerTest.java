@@ -0,0 +1,144 @@
+package nl.hsac.fitnesse.junit;
+
+import fitnesse.junit.FitNesseRunner;
+import nl.hsac.fitnesse.fixture.Environment;
+import nl.hsac.fitnesse.fixture.util.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runners.model.InitializationError;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests HsacFitNesseRunner.
+ */
+public class HsacFitNesseRunnerTest {
+    private static final String DIR = "target/hsac-runner-test-" + System.nanoTime();
+    private static final String PAGE_CONTENT = "!define TEST_SYSTEM {slim}\n"
+                                                + "\n"
+                                                + "|import|\n"
+                                                + "|nl.hsac.fitnesse.fixture.slim|\n"
+                                                + "\n"
+                                                + "|script|string fixture|\n"
+                                                + "|check|length of|abc|3|\n";
+
+    private String fitNesseRoot;
+
+    @Before
+    public void setUp() {
+        fitNesseRoot = Environment.getInstance().getFitNesseRootDir();
+        createPage("ParallelSuite", "!contents", "<Suite/>");
+        createPage("ParallelSuite/FirstPage", PAGE_CONTENT, "<Test/>");
+        createPage("ParallelSuite/SecondPage", PAGE_CONTENT, "<Test/>");
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("fitnesseParallelThreads");
+        if (new File(fitNesseRoot).isDirectory()) {
+            // runner changed it to its output directory
+            Environment.getInstance().setFitNesseRoot(fitNesseRoot);
+        }
+    }
+
+    @Test
+    public void testRunPagesInParallel() throws Exception {
+        System.setProperty("fitnesseParallelThreads", "2");
+
+        Result result = new JUnitCore().run(Request.runner(new TestDirRunner(ParallelSuiteTest.class)));
+
+        assertEquals(result.getFailures().toString(), 0, result.getFailureCount());
+        assertEquals(2, result.getRunCount());
+        String index = FileUtil.readFile(new File(DIR + "/output", "index.html"));
+        assertTrue(index.contains("ParallelSuite.FirstPage"));
+        assertTrue(index.contains("ParallelSuite.SecondPage"));
+    }
+
+    @Test
+    public void testIndexWriterProblemIsReported() throws Exception {
+        HsacFitNesseRunner runner = new TestDirRunner(ParallelSuiteTest.class) {
+            @Override
+            protected IndexHtmlWriter createIndexHtmlWriter() throws InitializationError {
+                throw new InitializationError("no index");
+            }
+        };
+
+        Result result = new JUnitCore().run(Request.runner(runner));
+
+        assertEquals(1, result.getFailureCount());
+        assertTrue(result.getFailures().get(0).getException() instanceof InitializationError);
+        // pages are still run
+        assertEquals(2, result.getRunCount());
+    }
+
+    @Test
+    public void testFailedIndexWriteIsReported() throws Exception {
+        HsacFitNesseRunner runner = new TestDirRunner(ParallelSuiteTest.class) {
+            @Override
+            protected IndexHtmlWriter createIndexHtmlWriter() {
+                IndexHtmlWriter writer = new IndexHtmlWriter(DIR + "/missing", "ParallelSuite");
+                writer.start();
+                return writer;
+            }
+        };
+
+        Result result = new JUnitCore().run(Request.runner(runner));
+
+        assertEquals(1, result.getFailureCount());
+        assertTrue(result.getFailures().get(0).getMessage(),
+                result.getFailures().get(0).getMessage().startsWith("Unable to write: "));
+        assertEquals(2, result.getRunCount());
+    }
+
+    @Test
+    public void testDeprecatedIndexHtmlContentIsUsedWhenOverridden() throws Exception {
+        HsacFitNesseRunner runner = new TestDirRunner(ParallelSuiteTest.class) {
+            @Override
+            protected String getIndexHtmlContent(String overviewHtml) {
+                return overviewHtml.replace("<article>", "<article><div>custom</div>");
+            }
+        };
+
+        Result result = new JUnitCore().run(Request.runner(runner));
+
+        assertEquals(result.getFailures().toString(), 0, result.getFailureCount());
+        String index = FileUtil.readFile(new File(DIR + "/output", "index.html"));
+        assertTrue(index.contains("<article><div>custom</div>"));
+        assertTrue(index.contains("ParallelSuite.SecondPage"));
+    }
+
+    private void createPage(String path, String content, String properties) {
+        String pageDir = DIR + "/FitNesseRoot/" + path + "/";
+        new File(pageDir).mkdirs();
+        FileUtil.writeFile(pageDir + "content.txt", content);
+        FileUtil.writeFile(pageDir + "properties.xml",
+                "<?xml version=\"1.0\"?>\n<properties>\n\t" + properties + "\n</properties>\n");
+    }
+
+    @FitNesseRunner.Suite("ParallelSuite")
+    public static class ParallelSuiteTest {
+    }
+
+    private static class TestDirRunner extends HsacFitNesseRunner {
+        TestDirRunner(Class<?> suiteClass) throws InitializationError {
+            super(suiteClass);
+        }
+
+        @Override
+        protected String getFitNesseDir(Class<?> suiteClass) {
+            return DIR;
+        }
+
+        @Override
+        protected String getOutputDir(Class<?> klass) {
+            return DIR + "/output";
+        }
+    }
+}
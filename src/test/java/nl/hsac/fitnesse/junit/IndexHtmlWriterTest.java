@@ -0,0 +1,95 @@
+package nl.hsac.fitnesse.junit;
+
+import fitnesse.testrunner.WikiTestPage;
+import fitnesse.testsystems.TestSummary;
+import fitnesse.wiki.PathParser;
+import fitnesse.wiki.WikiPage;
+import fitnesse.wiki.WikiPageUtil;
+import fitnesse.wiki.fs.InMemoryPage;
+import nl.hsac.fitnesse.fixture.util.FileUtil;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests IndexHtmlWriter.
+ */
+public class IndexHtmlWriterTest {
+    private final String outputDir = "target/index-html-writer-test-" + System.nanoTime();
+    private final WikiPage root = InMemoryPage.makeRoot("RooT");
+
+    @Test
+    public void testRowsAreAddedAsPagesComplete() {
+        new File(outputDir).mkdirs();
+        IndexHtmlWriter writer = new IndexHtmlWriter(outputDir, "MySuite");
+        writer.start();
+
+        writer.testComplete(page("MySuite.FirstTest"), new TestSummary(2, 0, 0, 0));
+        String partial = FileUtil.readFile(writer.getFile());
+        assertTrue(partial.contains("MySuite.FirstTest"));
+
+        writer.testComplete(page("MySuite.SecondTest"), new TestSummary(0, 1, 0, 0));
+        assertTrue(writer.finish(null));
+
+        String index = FileUtil.readFile(writer.getFile());
+        assertTrue(index.startsWith(partial));
+        assertTrue(index.contains("MySuite.SecondTest"));
+        assertTrue(index.endsWith("</article></body></html>"));
+    }
+
+    @Test
+    public void testRunSummaryIsInsertedBeforeTable() {
+        new File(outputDir).mkdirs();
+        IndexHtmlWriter writer = new IndexHtmlWriter(outputDir, "MySuite");
+        writer.start();
+        writer.testComplete(page("MySuite.FirstTest"), new TestSummary(1, 0, 0, 0));
+
+        assertTrue(writer.finish("<div>summary</div>"));
+        assertNull(writer.getFailure());
+
+        String index = FileUtil.readFile(writer.getFile());
+        assertEquals(index.indexOf("<table"), index.indexOf("<div>summary</div>") + "<div>summary</div>".length());
+        assertTrue(index.contains("MySuite.FirstTest"));
+        assertTrue(index.endsWith("</article></body></html>"));
+        assertTrue(!new File(outputDir, "index.html.tmp").exists());
+    }
+
+    @Test
+    public void testContentCanBeOverridden() {
+        new File(outputDir).mkdirs();
+        IndexHtmlWriter writer = new IndexHtmlWriter(outputDir, "MySuite") {
+            @Override
+            protected void completeIndex(String runSummary) throws IOException {
+                replaceContent(FileUtil.readFile(getFile()).replace("<article>", "<article>" + runSummary));
+            }
+        };
+        writer.start();
+        writer.testComplete(page("MySuite.FirstTest"), new TestSummary(1, 0, 0, 0));
+
+        assertTrue(writer.finish("<div>summary</div>"));
+
+        String index = FileUtil.readFile(writer.getFile());
+        assertTrue(index.contains("<title>MySuite</title>"));
+        assertTrue(index.contains("<article><div>summary</div>"));
+    }
+
+    @Test
+    public void testMissingDirectoryDoesNotFail() {
+        IndexHtmlWriter writer = new IndexHtmlWriter(outputDir + "/missing", "MySuite");
+        writer.start();
+        writer.testComplete(page("MySuite.FirstTest"), new TestSummary(1, 0, 0, 0));
+
+        assertEquals(false, writer.finish("<div>summary</div>"));
+        assertNotNull(writer.getFailure());
+    }
+
+    private WikiTestPage page(String path) {
+        return new WikiTestPage(WikiPageUtil.addPage(root, PathParser.parse(path)));
+    }
+}
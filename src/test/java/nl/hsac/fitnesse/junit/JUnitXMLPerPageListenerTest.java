@@ -0,0 +1,120 @@
+package nl.hsac.fitnesse.junit;
+
+import nl.hsac.fitnesse.fixture.util.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests JUnitXMLPerPageListener.
+ */
+public class JUnitXMLPerPageListenerTest {
+    private final String dir = "target/junit-xml-listener-test-" + System.nanoTime();
+    private JUnitXMLPerPageListener listener;
+
+    @Before
+    public void setUp() {
+        System.setProperty("fitnessePageDurationHistory", dir + "/durations.properties");
+        System.setProperty(JUnitXMLPerPageListener.SUITE_REPORT_PROP, "true");
+        listener = new JUnitXMLPerPageListener() {
+            @Override
+            protected String getOutputPath() {
+                return dir;
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("fitnessePageDurationHistory");
+        System.clearProperty(JUnitXMLPerPageListener.SUITE_REPORT_PROP);
+        System.clearProperty(HsacFitNesseRunner.SHARD_COUNT_PROP);
+        System.clearProperty(HsacFitNesseRunner.SHARD_INDEX_PROP);
+    }
+
+    @Test
+    public void testResultsAreWrittenWhenRunFinishes() throws Exception {
+        Description passed = Description.createTestDescription(getClass(), "Suite.PassedPage");
+        Description failed = Description.createTestDescription(getClass(), "Suite.FailedPage");
+
+        listener.testStarted(passed);
+        listener.testFinished(passed);
+        listener.testStarted(failed);
+        listener.testFailure(new Failure(failed, new AssertionError("1 wrong & 0 exceptions")));
+        listener.testFinished(failed);
+        listener.testRunFinished(new Result());
+
+        String passedXml = FileUtil.readFile(new File(dir, "TEST-Suite.PassedPage.xml"));
+        assertTrue(passedXml.contains("failures=\"0\""));
+        String failedXml = FileUtil.readFile(new File(dir, "TEST-Suite.FailedPage.xml"));
+        // failure must not be overwritten when test is finished
+        assertTrue(failedXml.contains("failures=\"1\""));
+        assertTrue(failedXml.contains("message=\"1 wrong &amp; 0 exceptions\""));
+
+        String suiteXml = FileUtil.readFile(new File(dir, "TEST-suite.xml"));
+        assertTrue(suiteXml.startsWith("<?xml"));
+        assertTrue(suiteXml.endsWith("</testsuites>"));
+        assertEquals(2, suiteXml.split("<testcase ").length - 1);
+        assertTrue(suiteXml.contains("name=\"Suite.FailedPage\""));
+        assertTrue(suiteXml.contains("message=\"1 wrong &amp; 0 exceptions\""));
+
+        assertEquals(2, new PageDurationHistory(new File(dir, "durations.properties")).load().size());
+    }
+
+    @Test
+    public void testSuiteReportOfShardHasOwnName() throws Exception {
+        System.setProperty(HsacFitNesseRunner.SHARD_COUNT_PROP, "2");
+        System.setProperty(HsacFitNesseRunner.SHARD_INDEX_PROP, "1");
+        Description description = Description.createTestDescription(getClass(), "Suite.ShardPage");
+
+        listener.testStarted(description);
+        listener.testFinished(description);
+        listener.testRunFinished(new Result());
+
+        assertFalse(new File(dir, "TEST-suite.xml").exists());
+        String suiteXml = FileUtil.readFile(new File(dir, "TEST-suite-shard-1.xml"));
+        assertTrue(suiteXml.contains("name=\"Suite.ShardPage\""));
+    }
+
+    @Test
+    public void testWriteFailureIsReportedWhenRunFinishes() throws Exception {
+        Description description = Description.createTestDescription(getClass(), "Suite.UnwritablePage");
+        // a directory can not be written as file
+        new File(dir, "TEST-Suite.UnwritablePage.xml").mkdirs();
+
+        listener.testStarted(description);
+        listener.testFinished(description);
+        try {
+            listener.testRunFinished(new Result());
+            fail("Expected exception");
+        } catch (RuntimeException e) {
+            assertEquals("Unable to write result for: Suite.UnwritablePage", e.getMessage());
+        }
+
+        // durations are still stored
+        assertEquals(1, new PageDurationHistory(new File(dir, "durations.properties")).load().size());
+    }
+
+    @Test
+    public void testFailureOfUnfinishedTestIsWritten() throws Exception {
+        Description description = Description.createTestDescription(getClass(), "Suite.BrokenPage");
+
+        listener.testStarted(description);
+        listener.testFailure(new Failure(description, new IllegalStateException("broken")));
+        assertFalse(new File(dir, "TEST-Suite.BrokenPage.xml").exists());
+        listener.testRunFinished(new Result());
+
+        String xml = FileUtil.readFile(new File(dir, "TEST-Suite.BrokenPage.xml"));
+        assertTrue(xml.contains("errors=\"1\""));
+    }
+}
@@ -0,0 +1,40 @@
+package nl.hsac.fitnesse.junit;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests PageDurationHistory.
+ */
+public class PageDurationHistoryTest {
+    private final PageDurationHistory history = new PageDurationHistory(
+            new File("target/history-test-" + System.currentTimeMillis() + "/durations.properties"));
+
+    @Test
+    public void testLoadWithoutFile() {
+        assertTrue(history.load().isEmpty());
+    }
+
+    @Test
+    public void testUpdateKeepsOtherPages() {
+        Map<String, Double> first = new HashMap<String, Double>();
+        first.put("Suite.PageA", 1.5);
+        first.put("Suite.PageB", 2.0);
+        history.update(first);
+
+        Map<String, Double> second = new HashMap<String, Double>();
+        second.put("Suite.PageB", 4.25);
+        history.update(second);
+
+        Map<String, Double> result = history.load();
+        assertEquals(2, result.size());
+        assertEquals(1.5, result.get("Suite.PageA"), 0.0001);
+        assertEquals(4.25, result.get("Suite.PageB"), 0.0001);
+    }
+}
@@ -0,0 +1,107 @@
+package nl.hsac.fitnesse.junit;
+
+import nl.hsac.fitnesse.fixture.util.FileUtil;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests PagePartitioner.
+ */
+public class PagePartitionerTest {
+    private final Map<String, Double> durations = new HashMap<String, Double>();
+    private final PagePartitioner partitioner = new PagePartitioner(durations);
+
+    @Test
+    public void testWithoutDurations() {
+        List<List<String>> partitions = partitioner.partition(Arrays.asList("A", "B", "C", "D", "E"), 2);
+
+        assertEquals(Arrays.asList("A", "C", "E"), partitions.get(0));
+        assertEquals(Arrays.asList("B", "D"), partitions.get(1));
+    }
+
+    @Test
+    public void testBalancedByDuration() {
+        durations.put("A", 10.0);
+        durations.put("B", 1.0);
+        durations.put("C", 1.0);
+        durations.put("D", 8.0);
+        durations.put("E", 2.0);
+
+        List<List<String>> partitions = partitioner.partition(Arrays.asList("A", "B", "C", "D", "E"), 2);
+
+        assertEquals(Arrays.asList("A", "B"), partitions.get(0));
+        assertEquals(Arrays.asList("D", "E", "C"), partitions.get(1));
+    }
+
+    @Test
+    public void testUnknownDurationIsAverage() {
+        durations.put("A", 6.0);
+        durations.put("B", 2.0);
+
+        List<List<String>> partitions = partitioner.partition(Arrays.asList("A", "B", "C", "D"), 2);
+
+        // C and D are expected to take 4 seconds each
+        assertEquals(Arrays.asList("A", "B"), partitions.get(0));
+        assertEquals(Arrays.asList("C", "D"), partitions.get(1));
+    }
+
+    @Test
+    public void testOrderLongestFirst() {
+        durations.put("B", 3.0);
+        durations.put("C", 1.0);
+        durations.put("D", 3.0);
+
+        assertEquals(Arrays.asList("B", "D", "A", "C"), partitioner.order(Arrays.asList("A", "B", "C", "D")));
+    }
+
+    @Test
+    public void testMorePartitionsThanPages() {
+        List<List<String>> partitions = partitioner.partition(Arrays.asList("A"), 3);
+
+        assertEquals(Arrays.asList("A"), partitions.get(0));
+        assertEquals(Collections.<String>emptyList(), partitions.get(1));
+        assertEquals(Collections.<String>emptyList(), partitions.get(2));
+    }
+
+    @Test
+    public void testByNameDependsOnlyOnPageName() {
+        PagePartitioner byName = PagePartitioner.byName();
+        List<String> all = Arrays.asList("Suite.A", "Suite.B", "Suite.C", "Suite.D", "Suite.E");
+
+        List<List<String>> partitions = byName.partition(all, 3);
+        List<List<String>> fewerPages = byName.partition(Arrays.asList("Suite.E", "Suite.C"), 3);
+
+        int total = 0;
+        for (int i = 0; i < 3; i++) {
+            total += partitions.get(i).size();
+            for (String page : fewerPages.get(i)) {
+                assertTrue(page, partitions.get(i).contains(page));
+            }
+        }
+        assertEquals(all.size(), total);
+    }
+
+    @Test
+    public void testReadDurations() throws Exception {
+        File dir = new File("target/partitioner-test-" + System.currentTimeMillis());
+        dir.mkdirs();
+        FileUtil.writeFile(new File(dir, "TEST-Suite.PageA.xml").getPath(),
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + new JUnitXMLPerPageListener().generateResultXml("Suite.PageA", null, 1.5));
+        FileUtil.writeFile(new File(dir, "other.txt").getPath(), "time=\"3\" name=\"Other\"");
+
+        Map<String, Double> result = PagePartitioner.readDurations(dir);
+
+        assertEquals(1, result.size());
+        assertEquals(1.5, result.get("Suite.PageA"), 0.0001);
+    }
+}